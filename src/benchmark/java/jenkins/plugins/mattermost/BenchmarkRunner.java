@@ -0,0 +1,38 @@
+package jenkins.plugins.mattermost;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this plugin, with allocation figures from the GC profiler. They take a
+ * while, so they are only compiled and run with {@code mvn test -Dtest=BenchmarkRunner
+ * -Dbenchmark=true}, which activates the {@code benchmark} profile.
+ */
+public class BenchmarkRunner {
+
+  @Test
+  public void runJmhBenchmarks() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    Options options =
+        new OptionsBuilder()
+            .include(BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark")
+            .mode(Mode.AverageTime)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .addProfiler(GCProfiler.class)
+            .shouldFailOnError(true)
+            .resultFormat(ResultFormatType.JSON)
+            .result("target/jmh-report.json")
+            .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,51 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares matching a host against a corporate sized no-proxy list of regular expressions, as
+ * {@link StandardMattermostService#isProxyRequired} does, with {@link HostGlobMatcher}.
+ */
+@State(Scope.Thread)
+public class HostGlobBenchmark {
+
+  private static final String HOST = "mattermost.chat.example.com";
+
+  private List<Pattern> patterns;
+  private HostGlobMatcher matcher;
+
+  @Setup
+  public void setup() {
+    List<String> globs = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      globs.add(i % 3 == 0 ? "host" + i + ".corp.example" : "*.dept" + i + ".corp.example");
+    }
+    globs.add("10.*");
+    patterns = new ArrayList<>();
+    for (String glob : globs) {
+      patterns.add(Pattern.compile(StandardMattermostService.createRegexFromGlob(glob)));
+    }
+    matcher = HostGlobMatcher.compile(globs);
+  }
+
+  @Benchmark
+  public boolean regex() {
+    for (Pattern p : patterns) {
+      if (p.matcher(HOST).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Benchmark
+  public boolean globMatcher() {
+    return matcher.matches(HOST);
+  }
+}
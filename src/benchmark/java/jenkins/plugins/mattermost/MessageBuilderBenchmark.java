@@ -0,0 +1,84 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares escaping a completion message with a long job display name and 200 commits through
+ * chains of {@code String.replace} into a {@code StringBuffer}, as {@link
+ * ActiveNotifier.MessageBuilder} used to, with the single-pass escaper it uses now.
+ */
+@State(Scope.Thread)
+public class MessageBuilderBenchmark {
+
+  private static final String BACK_TO_NORMAL = ":white_check_mark: Back to normal";
+
+  private String displayName;
+  private List<String> commits;
+
+  @Setup
+  public void setup() {
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 8; i++) {
+      name.append("team_").append(i).append(" \u00bb release*candidates \u00bb ");
+    }
+    displayName = name.append("my_project `feature~branch` <beta> & co").toString();
+    commits = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      commits.add("- Fix <flaky> & \"slow\" test in module_" + i + " [alice]\n");
+    }
+  }
+
+  @Benchmark
+  public int replaceChains() {
+    StringBuffer message = new StringBuffer();
+    message.append(escapeDisplayName(displayName));
+    message.append(" - ");
+    message.append(escapeDisplayName("#42"));
+    message.append(" ");
+    message.append(escape(BACK_TO_NORMAL));
+    message.append(" after ");
+    message.append(message.toString().contains(BACK_TO_NORMAL) ? "3 min" : "12 sec");
+    for (String commit : commits) {
+      message.append(escape(commit));
+    }
+    return message.toString().length();
+  }
+
+  @Benchmark
+  public int singlePass() {
+    StringBuilder message = new StringBuilder();
+    ActiveNotifier.MessageBuilder.escapeTo(message, displayName, true);
+    message.append(" - ");
+    ActiveNotifier.MessageBuilder.escapeTo(message, "#42", true);
+    message.append(" ");
+    String status = BACK_TO_NORMAL;
+    ActiveNotifier.MessageBuilder.escapeTo(message, status, false);
+    message.append(" after ");
+    message.append(status == BACK_TO_NORMAL ? "3 min" : "12 sec");
+    for (String commit : commits) {
+      ActiveNotifier.MessageBuilder.escapeTo(message, commit, false);
+    }
+    return message.toString().length();
+  }
+
+  private static String escape(String string) {
+    string = string.replace("&", "&amp;");
+    string = string.replace("<", "&lt;");
+    string = string.replace(">", "&gt;");
+    return string;
+  }
+
+  private static String escapeDisplayName(String displayName) {
+    displayName = escape(displayName);
+    displayName = displayName.replace("~", "\\~");
+    displayName = displayName.replace("*", "\\*");
+    displayName = displayName.replace("_", "\\_");
+    displayName = displayName.replace("`", "\\`");
+    return displayName;
+  }
+}
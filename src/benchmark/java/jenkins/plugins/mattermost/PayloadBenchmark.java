@@ -0,0 +1,80 @@
+package jenkins.plugins.mattermost;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares building the webhook payload as an {@code org.json} tree, as it used to be, with
+ * streaming it through {@link PayloadWriter}, for a message posted to three channels.
+ */
+@State(Scope.Thread)
+public class PayloadBenchmark {
+
+  private static final String[] CHANNELS = {"#builds", "#team", "jenkins@@alice"};
+
+  private List<Attachment> attachments;
+
+  @Setup
+  public void setup() {
+    StringBuilder message = new StringBuilder("my-job - #42 Back to normal after 3 min 12 sec");
+    for (int i = 0; i < 10; i++) {
+      message.append("\n- Fix \"flaky\" test in module ").append(i).append(" [alice]");
+    }
+    attachments =
+        Collections.singletonList(new Attachment(message.toString(), "@here deploy", "good"));
+  }
+
+  @Benchmark
+  public int jsonTree() {
+    Attachment part = attachments.get(0);
+    int bytes = 0;
+    for (String channel : CHANNELS) {
+      JSONObject json = new JSONObject();
+      JSONObject field = new JSONObject();
+      field.put("short", false);
+      field.put("value", part.getMessage());
+      JSONArray fields = new JSONArray();
+      fields.put(field);
+      JSONObject attachment = new JSONObject();
+      attachment.put("fallback", part.getMessage());
+      attachment.put("color", part.getColor());
+      attachment.put("fields", fields);
+      JSONArray mrkdwn = new JSONArray();
+      mrkdwn.put("pretext");
+      mrkdwn.put("text");
+      mrkdwn.put("fields");
+      attachment.put("mrkdwn_in", mrkdwn);
+      JSONArray array = new JSONArray();
+      array.put(attachment);
+      json.put("text", part.getText());
+      json.put("attachments", array);
+      json.put("channel", channel);
+      json.put("username", "jenkins");
+      json.put("icon_url", "");
+      // logged and then turned into the entity, as before
+      bytes += json.toString().length();
+      bytes += json.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+    return bytes;
+  }
+
+  @Benchmark
+  public int payloadWriter() {
+    byte[] attachmentsJson = PayloadWriter.attachments(attachments, false);
+    int bytes = 0;
+    for (String channel : CHANNELS) {
+      bytes +=
+          PayloadWriter.reuse()
+              .writePost(attachments.get(0).getText(), attachmentsJson, channel, "jenkins", "")
+              .size();
+    }
+    return bytes;
+  }
+}
@@ -1,22 +1,21 @@
 package jenkins.plugins.mattermost;
 
-import hudson.EnvVars;
 import hudson.Util;
 import hudson.model.*;
 import hudson.scm.ChangeLogSet;
 import hudson.tasks.test.AbstractTestResultAction;
-import hudson.util.LogTaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.apache.commons.lang.StringUtils;
 
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
-
-import static java.util.logging.Level.INFO;
-import static java.util.logging.Level.SEVERE;
+import javax.annotation.CheckForNull;
 
 
 @SuppressWarnings("rawtypes")
@@ -24,9 +23,15 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
   private static final Logger logger = Logger.getLogger(MattermostNotifier.class.getName());
 
+  /** How many upstream builds are loaded at most to find the changes that triggered a build. */
+  static final int MAX_UPSTREAM_DEPTH =
+      SystemProperties.getInteger(ActiveNotifier.class.getName() + ".maxUpstreamDepth", 10);
+
   MattermostNotifier notifier;
   BuildListener listener;
   private final TokenExpander tokenExpander;
+  /** The context of the event being notified, captured on the build thread or created for it. */
+  private NotificationContext context;
 
   public ActiveNotifier(MattermostNotifier notifier, BuildListener listener, TokenExpander tokenExpander) {
     super();
@@ -35,17 +40,47 @@ public class ActiveNotifier implements FineGrainedNotifier {
     this.tokenExpander = tokenExpander;
   }
 
+  /** A notifier that works from what was captured on the build thread, without the build log. */
+  ActiveNotifier(NotificationContext context, TokenExpander tokenExpander) {
+    this.notifier = context.getNotifier();
+    this.listener = null;
+    this.tokenExpander = tokenExpander;
+    this.context = context;
+  }
+
+  /** The context shared by all messages about an event of the build. */
+  private NotificationContext contextFor(AbstractBuild r) {
+    if (context == null || context.getBuild() != r) {
+      context = new NotificationContext(notifier, r, listener);
+    }
+    return context;
+  }
+
   private MattermostService getMattermost(AbstractBuild r) {
-    return notifier.newMattermostService(r, listener);
+    return contextFor(r).getService();
+  }
+
+  private MessageBuilder newMessage(AbstractBuild r) {
+    if (context != null && context.getBuild() == r) {
+      return new MessageBuilder(context, this.tokenExpander);
+    }
+    // an upstream build, whose changes are listed
+    return new MessageBuilder(notifier, r, this.tokenExpander);
   }
 
   public void deleted(AbstractBuild r) {
   }
 
   public void started(AbstractBuild build) {
+    publishStarted(build);
+  }
+
+  /** Posts the start notification of the build, returning the result of the post. */
+  CompletableFuture<PublishResult> publishStarted(AbstractBuild build) {
 
     // AbstractProject<?, ?> project = build.getProject();
 
+    NotificationContext context = contextFor(build);
     CauseAction causeAction = build.getAction(CauseAction.class);
 
     if (causeAction != null) {
@@ -53,39 +88,34 @@ public class ActiveNotifier implements FineGrainedNotifier {
       //Cause scmCause = causeAction.findCause(SCMTrigger.SCMTriggerCause.class);
       List<Cause> scmCauses = causeAction.getCauses();
       if (scmCauses.size() == 0) {
-        MessageBuilder message = new MessageBuilder(notifier, build, this.tokenExpander);
+        MessageBuilder message = newMessage(build);
         message.append(causeAction.getShortDescription());
         message.appendOpenLink();
         if (notifier.getIncludeCustomMessage()) {
-          message.appendCustomMessage(build.getResult());
+          message.appendCustomMessage(context.getResult());
         }
-        notifyStart(build, message.toString());
         // Cause was found, exit early to prevent double-message
-        return;
+        return notifyStart(build, message.toString());
       }
     }
 
     String changes = getChanges(build, notifier.getIncludeCustomAttachmentMessage());
     if (changes != null) {
-      notifyStart(build, changes);
+      return notifyStart(build, changes);
     } else {
-      notifyStart(
+      return notifyStart(
               build, getBuildStatusMessage(build, false, notifier.getIncludeCustomAttachmentMessage()));
     }
   }
 
-  private void notifyStart(AbstractBuild build, String attachmentMessage) {
-    AbstractProject<?, ?> project = (build != null) ? build.getProject() : null;
-    AbstractBuild<?, ?> previousBuild =
-            (project != null && project.getLastBuild() != null)
-                    ? project.getLastBuild().getPreviousCompletedBuild()
-                    : null;
+  private CompletableFuture<PublishResult> notifyStart(AbstractBuild build, String attachmentMessage) {
+    Result previousResult = BuildHistoryIndex.get().before(build).getLastResult();
     String expandedCustomMessage = getExpandedCustomMessage(build);
-    if (previousBuild == null) {
-      getMattermost(build).publish(attachmentMessage, expandedCustomMessage, "good");
+    if (previousResult == null) {
+      return getMattermost(build).publishAsync(attachmentMessage, expandedCustomMessage, "good");
     } else {
-      getMattermost(build)
-              .publish(attachmentMessage, expandedCustomMessage, getBuildColor(previousBuild));
+      return getMattermost(build)
+              .publishAsync(attachmentMessage, expandedCustomMessage, getBuildColor(previousResult));
     }
   }
 
@@ -93,15 +123,19 @@ public class ActiveNotifier implements FineGrainedNotifier {
   }
 
   public void completed(AbstractBuild r) {
-    AbstractProject<?, ?> project = r.getProject();
-    Result result = r.getResult();
-    AbstractBuild<?, ?> previousBuild = project.getLastBuild();
-    if (previousBuild != null) {
-      do {
-        previousBuild = previousBuild.getPreviousCompletedBuild();
-      } while (previousBuild != null && previousBuild.getResult() == Result.ABORTED);
-    }
-    Result previousResult = (previousBuild != null) ? previousBuild.getResult() : Result.SUCCESS;
+    publishCompleted(r);
+  }
+
+  /**
+   * Posts the completion notification of the build, returning the result of posting its status,
+   * or {@code null} if nothing was posted.
+   */
+  CompletableFuture<PublishResult> publishCompleted(AbstractBuild r) {
+    Result result = contextFor(r).getResult();
+    Result previousResult = BuildHistoryIndex.get().before(r).getLastNonAbortedResult();
+    if (previousResult == null) {
+      previousResult = Result.SUCCESS;
+    }
     if ((result == Result.ABORTED && notifier.getNotifyAborted())
             || (result == Result.FAILURE // notify only on
             // single failed
@@ -117,19 +151,62 @@ public class ActiveNotifier implements FineGrainedNotifier {
             && notifier.getNotifyBackToNormal())
             || (result == Result.SUCCESS && notifier.getNotifySuccess())
             || (result == Result.UNSTABLE && notifier.getNotifyUnstable())) {
+      NotificationContext context = contextFor(r);
+      String room = Util.fixNull(context.getRoom());
+      String channels =
+              StormDetector.get()
+                      .admit(
+                              context.getEndpoint(),
+                              room,
+                              context.getIcon(),
+                              r.getProject().getFullDisplayName() + " " + r.getDisplayName(),
+                              String.valueOf(result),
+                              notifier.getBuildServerUrl() + r.getUrl());
+      if (channels == null) {
+        // every channel is in digest mode
+        return CompletableFuture.completedFuture(null);
+      }
+      if (!channels.equals(room)) {
+        context.setRoom(channels);
+      }
       String expandedCustomMessage = getExpandedCustomMessage(r);
-      getMattermost(r)
-              .publish(
-                      getBuildStatusMessage(
-                              r,
-                              notifier.getIncludeTestSummary(),
-                              notifier.getIncludeCustomAttachmentMessage()),
-                      expandedCustomMessage,
-                      getBuildColor(r));
-      if (notifier.getCommitInfoChoice().showAnything()) {
-        getMattermost(r).publish(getCommitList(r), expandedCustomMessage, getBuildColor(r));
+      MattermostService mattermost = getMattermost(r);
+      String color = getBuildColor(result);
+      String statusMessage =
+              getBuildStatusMessage(
+                      r,
+                      notifier.getIncludeTestSummary(),
+                      notifier.getIncludeCustomAttachmentMessage());
+      boolean showCommits = notifier.getCommitInfoChoice().showAnything();
+      int maxLength = CommitList.maxMessageLength(expandedCustomMessage);
+      int combinedLength = CommitList.maxMessageLengthBeside(statusMessage, expandedCustomMessage);
+      List<String> commitPosts = Collections.emptyList();
+      // not waited for: retries of a failed post must not hold on to the build executor
+      CompletableFuture<PublishResult> published;
+      if (showCommits
+              && GlobalSettings.current().isCombineCommitList()
+              && combinedLength >= CommitList.MIN_COMBINED_LENGTH) {
+        // the status and the first part of the changes as two attachments of one post
+        commitPosts = CommitList.split(getCommitList(r), combinedLength);
+        published =
+                mattermost.publishAsync(
+                        Arrays.asList(statusMessage, commitPosts.get(0)), expandedCustomMessage, color);
+        commitPosts = commitPosts.subList(1, commitPosts.size());
+      } else {
+        // also when a long status leaves too little room beside it
+        published = mattermost.publishAsync(statusMessage, expandedCustomMessage, color);
+        if (showCommits) {
+          // render the commit list while the status is being posted, but keep the posts in order
+          commitPosts = CommitList.split(getCommitList(r), maxLength);
+        }
       }
+      CompletableFuture<PublishResult> posts = published;
+      for (String post : commitPosts) {
+        posts = posts.thenCompose(status -> mattermost.publishAsync(post, expandedCustomMessage, color));
+      }
+      return published;
     }
+    return CompletableFuture.completedFuture(null);
   }
 
   String getChanges(AbstractBuild r, boolean includeCustomAttachmentMessage) {
@@ -137,28 +214,22 @@ public class ActiveNotifier implements FineGrainedNotifier {
       logger.info("No change set computed...");
       return null;
     }
-    ChangeLogSet changeSet = r.getChangeSet();
-    List<ChangeLogSet.Entry> entries = new LinkedList<>();
-    Set<ChangeLogSet.AffectedFile> files = new HashSet<ChangeLogSet.AffectedFile>();
-    for (Object o : changeSet.getItems()) {
-      ChangeLogSet.Entry entry = (ChangeLogSet.Entry) o;
-      logger.info("Entry " + o);
-      entries.add(entry);
-      files.addAll(entry.getAffectedFiles());
-    }
-    if (entries.isEmpty()) {
+    ChangeSetSummary changes = ChangeSetSummary.of(r.getChangeSet());
+    if (changes.isEmpty()) {
       logger.info("Empty change...");
       return null;
     }
-    Set<String> authors = new HashSet<String>();
-    for (ChangeLogSet.Entry entry : entries) {
-      authors.add(entry.getAuthor().getDisplayName());
-    }
-    MessageBuilder message = new MessageBuilder(notifier, r, this.tokenExpander);
+    MessageBuilder message = newMessage(r);
     message.append(":pray: Started by changes from ");
-    message.append(StringUtils.join(authors, ", "));
+    message.append(StringUtils.join(changes.getAuthors(), ", "));
+    if (changes.hasMoreAuthors()) {
+      message.append(" and others");
+    }
     message.append(" (");
-    message.append(files.size());
+    if (changes.isFileCountApproximate()) {
+      message.append("~");
+    }
+    message.append(changes.getFileCount());
     message.append(" file(s) changed)");
     message.appendOpenLink();
     if (includeCustomAttachmentMessage) {
@@ -168,49 +239,78 @@ public class ActiveNotifier implements FineGrainedNotifier {
   }
 
   String getCommitList(AbstractBuild r) {
-    ChangeLogSet changeSet = r.getChangeSet();
-    List<ChangeLogSet.Entry> entries = new LinkedList<ChangeLogSet.Entry>();
-    for (Object o : changeSet.getItems()) {
-      ChangeLogSet.Entry entry = (ChangeLogSet.Entry) o;
-      logger.info("Entry " + o);
-      entries.add(entry);
+    String commits = formatCommits(r);
+    if (commits != null) {
+      return commits;
     }
-    if (entries.isEmpty()) {
-      logger.info("Empty change...");
-      Cause.UpstreamCause c = (Cause.UpstreamCause) r.getCause(Cause.UpstreamCause.class);
-      if (c == null) {
-        return "No Changes.";
+    Cause.UpstreamCause c = (Cause.UpstreamCause) r.getCause(Cause.UpstreamCause.class);
+    if (c == null) {
+      return "No Changes.";
+    }
+    String key =
+        c.getUpstreamProject() + "#" + c.getUpstreamBuild() + " " + notifier.getCommitInfoChoice();
+    return UpstreamCommitCache.get().resolve(key, () -> getUpstreamCommitList(c));
+  }
+
+  /**
+   * Follows the upstream causes to the first build with changes, loading at most {@link
+   * #MAX_UPSTREAM_DEPTH} builds.
+   */
+  private String getUpstreamCommitList(Cause.UpstreamCause cause) {
+    Set<String> visited = new HashSet<>();
+    for (int depth = 0; depth < MAX_UPSTREAM_DEPTH; depth++) {
+      String upProjectName = cause.getUpstreamProject();
+      int buildNumber = cause.getUpstreamBuild();
+      if (!visited.add(upProjectName + "#" + buildNumber)) {
+        break;
       }
-      String upProjectName = c.getUpstreamProject();
-      int buildNumber = c.getUpstreamBuild();
       AbstractProject project =
-              Hudson.getInstance().getItemByFullName(upProjectName, AbstractProject.class);
+              Jenkins.get().getItemByFullName(upProjectName, AbstractProject.class);
       if (project == null) {
         return "No upstream project.";
       }
       AbstractBuild upBuild = (AbstractBuild) project.getBuildByNumber(buildNumber);
-      return getCommitList(upBuild);
-    }
-    Set<String> commits = new HashSet<String>();
-    for (ChangeLogSet.Entry entry : entries) {
-      StringBuffer commit = new StringBuffer();
-      CommitInfoChoice commitInfoChoice = notifier.getCommitInfoChoice();
-      if (commitInfoChoice.showTitle()) {
-        commit.append(entry.getMsg());
+      if (upBuild == null) {
+        return "No upstream build.";
+      }
+      String commits = formatCommits(upBuild);
+      if (commits != null) {
+        return commits;
       }
-      if (commitInfoChoice.showAuthor()) {
-        commit.append(" [").append(entry.getAuthor().getDisplayName()).append("]");
+      cause = (Cause.UpstreamCause) upBuild.getCause(Cause.UpstreamCause.class);
+      if (cause == null) {
+        break;
       }
-      commits.add(commit.toString());
     }
-    MessageBuilder message = new MessageBuilder(notifier, r, this.tokenExpander);
-    message.append("Changes:\n- ");
-    message.append(StringUtils.join(commits, "\n- "));
+    return "No Changes.";
+  }
+
+  /** The changes of the build, or {@code null} if it has none. */
+  @CheckForNull
+  private String formatCommits(AbstractBuild r) {
+    CommitInfoChoice commitInfoChoice = notifier.getCommitInfoChoice();
+    CommitList commits = new CommitList();
+    for (Object o : r.getChangeSet()) {
+      ChangeLogSet.Entry entry = (ChangeLogSet.Entry) o;
+      commits.add(
+          commitInfoChoice.showTitle() ? entry.getMsg() : null,
+          commitInfoChoice.showAuthor() ? entry.getAuthor().getDisplayName() : null);
+    }
+    if (commits.isEmpty()) {
+      logger.info("Empty change...");
+      return null;
+    }
+    MessageBuilder message = newMessage(r);
+    message.append("Changes:\n");
+    message.append(commits.render());
     return message.toString();
   }
 
   static String getBuildColor(AbstractBuild r) {
-    Result result = r.getResult();
+    return getBuildColor(r.getResult());
+  }
+
+  static String getBuildColor(Result result) {
     if (result == Result.SUCCESS) {
       return "good";
     } else if (result == Result.FAILURE) {
@@ -222,7 +322,7 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
   String getBuildStatusMessage(
           AbstractBuild r, boolean includeTestSummary, boolean includeCustomAttachmentMessage) {
-    MessageBuilder message = new MessageBuilder(notifier, r, this.tokenExpander);
+    MessageBuilder message = newMessage(r);
     message.appendStatusMessage();
     message.appendDuration();
     message.appendOpenLink();
@@ -238,14 +338,10 @@ public class ActiveNotifier implements FineGrainedNotifier {
   String getExpandedCustomMessage(AbstractBuild build) {
     String result = "";
     if (notifier.getIncludeCustomMessage()) {
-      String customMessage = notifier.getCustomMessage();
-      EnvVars envVars = new EnvVars();
-      try {
-        envVars = build.getEnvironment(new LogTaskListener(logger, INFO));
-      } catch (IOException | InterruptedException e) {
-        logger.log(SEVERE, e.getMessage(), e);
-      }
-      result = envVars.expand(customMessage);
+      result =
+          notifier
+              .getCustomMessageTemplate()
+              .expand(contextFor(build).getEnvironment(), null, build);
     }
     return result;
   }
@@ -261,65 +357,49 @@ public class ActiveNotifier implements FineGrainedNotifier {
             UNSTABLE_STATUS_MESSAGE = ":warning: Unstable",
             UNKNOWN_STATUS_MESSAGE = ":question: Unknown";
 
-    private StringBuffer message;
+    private final StringBuilder message;
+    /** Whether the status appended to the message is "Back to normal". */
+    private boolean backToNormal;
     private MattermostNotifier notifier;
     private AbstractBuild build;
     private final TokenExpander tokenExpander;
+    private final NotificationContext context;
 
     public MessageBuilder(MattermostNotifier notifier, AbstractBuild build, TokenExpander tokenExpander) {
-      this.notifier = notifier;
-      this.message = new StringBuffer();
-      this.build = build;
+      this(new NotificationContext(notifier, build, null), tokenExpander);
+    }
+
+    /** A builder sharing the environment and the result of the event's context. */
+    MessageBuilder(NotificationContext context, TokenExpander tokenExpander) {
+      this.notifier = context.getNotifier();
+      this.message = new StringBuilder();
+      this.build = context.getBuild();
       this.tokenExpander = tokenExpander;
+      this.context = context;
       startMessage();
     }
 
     public MessageBuilder appendStatusMessage() {
-      message.append(this.escape(getStatusMessage(build)));
+      Result result = context.getResult();
+      BuildHistory history = BuildHistoryIndex.get().before(build);
+      backToNormal = isBackToNormal(history, result);
+      escapeTo(message, getStatusMessage(history, result), false);
       return this;
     }
 
     static String getStatusMessage(AbstractBuild r) {
+      return getStatusMessage(r, r.getResult());
+    }
 
-      Result result = r.getResult();
-      Result previousResult;
-      Run lastBuild = r.getProject().getLastBuild();
-      Run previousBuild = (lastBuild != null) ? lastBuild.getPreviousBuild() : null;
-      Run previousSuccessfulBuild = r.getPreviousSuccessfulBuild();
-      boolean buildHasSucceededBefore = previousSuccessfulBuild != null;
-
-      /*
-       * If the last build was aborted, go back to find the last non-aborted build.
-       * This is so that aborted builds do not affect build transitions. I.e. if build
-       * 1 was failure, build 2 was aborted and build 3 was a success the transition
-       * should be failure -> success (and therefore back to normal) not aborted ->
-       * success.
-       */
-      Run lastNonAbortedBuild = previousBuild;
-      while (lastNonAbortedBuild != null && lastNonAbortedBuild.getResult() == Result.ABORTED) {
-        lastNonAbortedBuild = lastNonAbortedBuild.getPreviousBuild();
-      }
-
-      /*
-       * If all previous builds have been aborted, then use SUCCESS as a default
-       * status so an aborted message is sent
-       */
-      if (lastNonAbortedBuild == null) {
-        previousResult = Result.SUCCESS;
-      } else {
-        previousResult = lastNonAbortedBuild.getResult();
-      }
+    static String getStatusMessage(AbstractBuild r, Result result) {
+      return getStatusMessage(BuildHistoryIndex.get().before(r), result);
+    }
 
-      /*
-       * Back to normal should only be shown if the build has actually succeeded at
-       * some point. Also, if a build was previously unstable and has now succeeded
-       * the status should be "Back to normal"
-       */
-      if (result == Result.SUCCESS
-              && (previousResult == Result.FAILURE || previousResult == Result.UNSTABLE)
-              && buildHasSucceededBefore) {
+    private static String getStatusMessage(BuildHistory history, Result result) {
+      if (isBackToNormal(history, result)) {
         return BACK_TO_NORMAL_STATUS_MESSAGE;
       }
+      Result previousResult = previousResult(history);
       if (result == Result.FAILURE && previousResult == Result.FAILURE) {
         return STILL_FAILING_STATUS_MESSAGE;
       }
@@ -341,20 +421,45 @@ public class ActiveNotifier implements FineGrainedNotifier {
       return UNKNOWN_STATUS_MESSAGE;
     }
 
+    /*
+     * Aborted builds do not affect build transitions. I.e. if build 1 was failure,
+     * build 2 was aborted and build 3 was a success the transition should be
+     * failure -> success (and therefore back to normal) not aborted -> success.
+     * If all previous builds have been aborted, then use SUCCESS as a default
+     * status so an aborted message is sent
+     */
+    private static Result previousResult(BuildHistory history) {
+      return history.getLastNonAbortedResult() != null
+              ? history.getLastNonAbortedResult()
+              : Result.SUCCESS;
+    }
+
+    /*
+     * Back to normal should only be shown if the build has actually succeeded at
+     * some point. Also, if a build was previously unstable and has now succeeded
+     * the status should be "Back to normal"
+     */
+    private static boolean isBackToNormal(BuildHistory history, Result result) {
+      Result previousResult = previousResult(history);
+      return result == Result.SUCCESS
+              && (previousResult == Result.FAILURE || previousResult == Result.UNSTABLE)
+              && history.hasSucceeded();
+    }
+
     public MessageBuilder append(String string) {
-      message.append(this.escape(string));
+      escapeTo(message, string, false);
       return this;
     }
 
     public MessageBuilder append(Object string) {
-      message.append(this.escape(string.toString()));
+      escapeTo(message, string.toString(), false);
       return this;
     }
 
     private MessageBuilder startMessage() {
-      message.append(this.escapeDisplayName(build.getProject().getFullDisplayName()));
+      escapeTo(message, build.getProject().getFullDisplayName(), true);
       message.append(" - ");
-      message.append(this.escapeDisplayName(build.getDisplayName()));
+      escapeTo(message, build.getDisplayName(), true);
       message.append(" ");
       return this;
     }
@@ -368,7 +473,7 @@ public class ActiveNotifier implements FineGrainedNotifier {
     public MessageBuilder appendDuration() {
       message.append(" after ");
       String durationString;
-      if (message.toString().contains(BACK_TO_NORMAL_STATUS_MESSAGE)) {
+      if (backToNormal) {
         durationString = createBackToNormalDurationString();
       } else {
         durationString = build.getDurationString();
@@ -394,24 +499,21 @@ public class ActiveNotifier implements FineGrainedNotifier {
     }
 
     public MessageBuilder appendCustomMessage(Result buildResult) {
-      String replaced = tokenExpander.expand(notifier.getCustomMessage(), build);
+      String replaced =
+          notifier
+              .getCustomMessageTemplate()
+              .expand(context.getEnvironment(), tokenExpander, build);
       message.append("\n");
       message.append(replaced);
       return this;
     }
 
     public MessageBuilder appendCustomAttachmentMessage() {
-      String customAttachmentMessage = notifier.getCustomAttachmentMessage();
-      EnvVars envVars = new EnvVars();
-      try {
-        envVars = build.getEnvironment(new LogTaskListener(logger, INFO));
-      } catch (IOException e) {
-        logger.log(SEVERE, e.getMessage(), e);
-      } catch (InterruptedException e) {
-        logger.log(SEVERE, e.getMessage(), e);
-      }
       message.append("\n");
-      String replaced = tokenExpander.expand(envVars.expand(customAttachmentMessage), build);
+      String replaced =
+          notifier
+              .getCustomAttachmentMessageTemplate()
+              .expand(context.getEnvironment(), tokenExpander, build);
       message.append(replaced);
       message.append("\n");
 
@@ -419,8 +521,8 @@ public class ActiveNotifier implements FineGrainedNotifier {
     }
 
     private String createBackToNormalDurationString() {
-      Run previousSuccessfulBuild = build.getPreviousSuccessfulBuild();
-      if (previousSuccessfulBuild == null) {
+      BuildHistory history = BuildHistoryIndex.get().before(build);
+      if (!history.isLastSuccessKnown()) {
         return "unknown";
       }
 //      long previousSuccessStartTime = previousSuccessfulBuild.getStartTimeInMillis();
@@ -432,30 +534,76 @@ public class ActiveNotifier implements FineGrainedNotifier {
 //      long backToNormalDuration = buildEndTime - previousSuccessEndTime;
       //TODO CHANGED
       long currentBuildStartTime = build.getTimeInMillis();
-      long lastSuccessBuildStartTime = previousSuccessfulBuild.getTimeInMillis();
+      long lastSuccessBuildStartTime = history.getLastSuccessTime();
       long diff = currentBuildStartTime - lastSuccessBuildStartTime;
       return Util.getTimeSpanString(diff);
     }
 
     public String escape(String string) {
-      string = string.replace("&", "&amp;");
-      string = string.replace("<", "&lt;");
-      string = string.replace(">", "&gt;");
-
-      return string;
+      return escaped(string, false);
     }
 
     public String escapeDisplayName(String displayName) {
-      // escape HTML
-      displayName = escape(displayName);
-
-      // escape mattermost markdown which _may_ occur in job display names
-      displayName = displayName.replace("~", "\\~");
-      displayName = displayName.replace("*", "\\*");
-      displayName = displayName.replace("_", "\\_");
-      displayName = displayName.replace("`", "\\`");
+      return escaped(displayName, true);
+    }
 
-      return displayName;
+    private static String escaped(String string, boolean markdown) {
+      int i = 0;
+      while (i < string.length() && !needsEscape(string.charAt(i), markdown)) {
+        i++;
+      }
+      if (i == string.length()) {
+        return string;
+      }
+      StringBuilder escaped = new StringBuilder(string.length() + 16);
+      escapeTo(escaped, string, markdown);
+      return escaped.toString();
+    }
+
+    /**
+     * Appends the string with HTML escaped and, if {@code markdown} is set, the Mattermost markdown
+     * which <i>may</i> occur in job display names, in a single pass.
+     */
+    static void escapeTo(StringBuilder out, String string, boolean markdown) {
+      int start = 0;
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        if (!needsEscape(c, markdown)) {
+          continue;
+        }
+        out.append(string, start, i);
+        switch (c) {
+          case '&':
+            out.append("&amp;");
+            break;
+          case '<':
+            out.append("&lt;");
+            break;
+          case '>':
+            out.append("&gt;");
+            break;
+          default:
+            out.append('\\').append(c);
+        }
+        start = i + 1;
+      }
+      out.append(string, start, string.length());
+    }
+
+    private static boolean needsEscape(char c, boolean markdown) {
+      switch (c) {
+        case '&':
+        case '<':
+        case '>':
+          return true;
+        case '~':
+        case '*':
+        case '_':
+        case '`':
+          return markdown;
+        default:
+          return false;
+      }
     }
 
     public String toString() {
@@ -0,0 +1,50 @@
+package jenkins.plugins.mattermost;
+
+import java.util.List;
+import jenkins.util.SystemProperties;
+
+/** One attachment of a post: the message, its color, and the text shown above it. */
+final class Attachment {
+
+  /** The {@linkplain #estimatedSize estimated size} posts are kept below. */
+  static final int MAX_POST_SIZE =
+      SystemProperties.getInteger(Attachment.class.getName() + ".maxPostSize", 16000);
+
+  private final String message;
+  private final String text;
+  private final String color;
+
+  Attachment(String message, String text, String color) {
+    this.message = message;
+    this.text = text == null ? "" : text;
+    this.color = color;
+  }
+
+  String getMessage() {
+    return message;
+  }
+
+  String getText() {
+    return text;
+  }
+
+  String getColor() {
+    return color;
+  }
+
+  /** Rough size of the attachment in a payload, used to keep posts below Mattermost's limits. */
+  int estimatedSize() {
+    return (message == null ? 0 : 2 * message.length()) + text.length() + 100;
+  }
+
+  /** The text every attachment shares, or {@code null} if they differ. */
+  static String commonText(List<Attachment> attachments) {
+    String text = attachments.get(0).text;
+    for (Attachment attachment : attachments) {
+      if (!attachment.text.equals(text)) {
+        return null;
+      }
+    }
+    return text;
+  }
+}
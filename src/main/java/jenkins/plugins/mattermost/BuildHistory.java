@@ -0,0 +1,230 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.Result;
+import hudson.model.Run;
+import javax.annotation.CheckForNull;
+
+/**
+ * What the notifications need to know about the completed builds of a job: the results of the last
+ * one and of the last one that was not aborted, the last successful one and how many builds in a
+ * row have failed. Each completed build yields a new history via {@link #next}, so transitions
+ * such as "Back to normal" are decided without loading older builds.
+ */
+final class BuildHistory {
+
+  /** The history of a job without completed builds. */
+  static final BuildHistory EMPTY = new BuildHistory(0, null, null, 0, 0, 0, null);
+
+  /** How many builds are loaded at most when a history has to be rebuilt from the builds. */
+  static final int MAX_SCANNED_BUILDS = 100;
+
+  /** The last success number of a rebuilt history whose last success is further back. */
+  static final int UNKNOWN_SUCCESS = -1;
+
+  private final int lastNumber;
+  private final @CheckForNull Result lastResult;
+  private final @CheckForNull Result lastNonAbortedResult;
+  private final int lastSuccessNumber;
+  private final long lastSuccessTime;
+  private final int consecutiveFailures;
+  /** The history before the last build, while it may still be needed for its notification. */
+  private final @CheckForNull BuildHistory before;
+
+  BuildHistory(
+      int lastNumber,
+      @CheckForNull Result lastResult,
+      @CheckForNull Result lastNonAbortedResult,
+      int lastSuccessNumber,
+      long lastSuccessTime,
+      int consecutiveFailures,
+      @CheckForNull BuildHistory before) {
+    this.lastNumber = lastNumber;
+    this.lastResult = lastResult;
+    this.lastNonAbortedResult = lastNonAbortedResult;
+    this.lastSuccessNumber = lastSuccessNumber;
+    this.lastSuccessTime = lastSuccessTime;
+    this.consecutiveFailures = consecutiveFailures;
+    this.before = before;
+  }
+
+  /** The history once the given build has completed. */
+  BuildHistory next(int number, Result result, long startTime) {
+    boolean aborted = result == Result.ABORTED;
+    boolean success = result == Result.SUCCESS;
+    int failures = consecutiveFailures;
+    if (result == Result.FAILURE) {
+      failures++;
+    } else if (!aborted) {
+      failures = 0;
+    }
+    return new BuildHistory(
+        number,
+        result,
+        aborted ? lastNonAbortedResult : result,
+        success ? number : lastSuccessNumber,
+        success ? startTime : lastSuccessTime,
+        failures,
+        withoutBefore());
+  }
+
+  private BuildHistory withoutBefore() {
+    return before == null
+        ? this
+        : new BuildHistory(
+            lastNumber,
+            lastResult,
+            lastNonAbortedResult,
+            lastSuccessNumber,
+            lastSuccessTime,
+            consecutiveFailures,
+            null);
+  }
+
+  /**
+   * The history as it was before the given build completed, or {@code null} if this history cannot
+   * tell: builds after it have completed already, or the build before it is not the last one this
+   * history knows of, as when builds completed while no notifier recorded them.
+   *
+   * @param previousNumber the number of the completed build before the given one, or 0 if none
+   */
+  @CheckForNull
+  BuildHistory before(int number, int previousNumber) {
+    BuildHistory history = lastNumber == number ? before : this;
+    return history != null && history.lastNumber == previousNumber ? history : null;
+  }
+
+  /**
+   * Rebuilds the history before the given build from its predecessors, the way the notifications
+   * used to walk the builds. At most {@link #MAX_SCANNED_BUILDS} builds are loaded; if none of
+   * them succeeded the last success is {@linkplain #isLastSuccessKnown unknown}.
+   */
+  @SuppressWarnings("rawtypes")
+  static BuildHistory scan(Run build) {
+    Run previous = build.getPreviousCompletedBuild();
+    if (previous == null) {
+      return EMPTY;
+    }
+    Result lastResult = previous.getResult();
+    Result lastNonAbortedResult = null;
+    int failures = 0;
+    boolean counting = true;
+    Run lastSuccess = null;
+    Run run = previous;
+    for (int scanned = 0; run != null && scanned < MAX_SCANNED_BUILDS; scanned++) {
+      Result result = run.getResult();
+      if (result == Result.SUCCESS && lastSuccess == null) {
+        lastSuccess = run;
+      }
+      if (result != Result.ABORTED) {
+        if (lastNonAbortedResult == null) {
+          lastNonAbortedResult = result;
+        }
+        if (result == Result.FAILURE && counting) {
+          failures++;
+        } else {
+          counting = false;
+        }
+      }
+      if (lastNonAbortedResult != null && !counting && lastSuccess != null) {
+        break;
+      }
+      run = run.getPreviousCompletedBuild();
+    }
+    int lastSuccessNumber;
+    if (lastSuccess != null) {
+      lastSuccessNumber = lastSuccess.getNumber();
+    } else {
+      // without a success among the builds scanned, it is only known if all builds were
+      lastSuccessNumber = run == null ? 0 : UNKNOWN_SUCCESS;
+    }
+    return new BuildHistory(
+        previous.getNumber(),
+        lastResult,
+        lastNonAbortedResult,
+        lastSuccessNumber,
+        lastSuccess != null ? lastSuccess.getTimeInMillis() : 0,
+        failures,
+        null);
+  }
+
+  /** The number of the last completed build, or 0 if there is none. */
+  int getLastNumber() {
+    return lastNumber;
+  }
+
+  /** The result of the last completed build, or {@code null} if there is none. */
+  @CheckForNull
+  Result getLastResult() {
+    return lastResult;
+  }
+
+  /** The result of the last completed build that was not aborted, or {@code null}. */
+  @CheckForNull
+  Result getLastNonAbortedResult() {
+    return lastNonAbortedResult;
+  }
+
+  /** Whether a build has succeeded, or may have before the builds a rebuilt history looked at. */
+  boolean hasSucceeded() {
+    return lastSuccessNumber != 0;
+  }
+
+  /** Whether {@link #getLastSuccessNumber} and {@link #getLastSuccessTime} are known. */
+  boolean isLastSuccessKnown() {
+    return lastSuccessNumber > 0;
+  }
+
+  int getLastSuccessNumber() {
+    return lastSuccessNumber;
+  }
+
+  /** When the last successful build started. */
+  long getLastSuccessTime() {
+    return lastSuccessTime;
+  }
+
+  /** Number of failed builds since the last one that neither failed nor was aborted. */
+  int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  /** One line with the fields of this history; the history before the last build is not kept. */
+  String toLine() {
+    return lastNumber
+        + " "
+        + name(lastResult)
+        + " "
+        + name(lastNonAbortedResult)
+        + " "
+        + lastSuccessNumber
+        + " "
+        + lastSuccessTime
+        + " "
+        + consecutiveFailures;
+  }
+
+  /** Parses a line written by {@link #toLine}. */
+  static BuildHistory fromLine(String line) {
+    String[] fields = line.trim().split(" ");
+    if (fields.length != 6) {
+      throw new IllegalArgumentException("Malformed build history: " + line);
+    }
+    return new BuildHistory(
+        Integer.parseInt(fields[0]),
+        result(fields[1]),
+        result(fields[2]),
+        Integer.parseInt(fields[3]),
+        Long.parseLong(fields[4]),
+        Integer.parseInt(fields[5]),
+        null);
+  }
+
+  private static String name(@CheckForNull Result result) {
+    return result != null ? result.toString() : "-";
+  }
+
+  @CheckForNull
+  private static Result result(String name) {
+    return name.equals("-") ? null : Result.fromString(name);
+  }
+}
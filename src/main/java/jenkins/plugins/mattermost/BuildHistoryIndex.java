@@ -0,0 +1,188 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * The {@link BuildHistory} of each job with Mattermost notifications, updated as its builds
+ * complete and kept in a one-line file in the job's directory. Older builds are only loaded to
+ * rebuild a history that is missing or cannot answer, such as after builds were deleted or
+ * completed while no notifier recorded them. The files are written by a single background thread,
+ * so completing builds do not wait for the disk.
+ */
+final class BuildHistoryIndex {
+
+  private static final Logger logger = Logger.getLogger(BuildHistoryIndex.class.getName());
+
+  static final String FILE_NAME = "mattermost-history";
+
+  private static final BuildHistoryIndex instance = new BuildHistoryIndex();
+
+  /** The history of each job by full name, once read or rebuilt. */
+  private final ConcurrentMap<String, BuildHistory> histories = new ConcurrentHashMap<>();
+
+  /** Writes the files in the order the builds completed. */
+  private final ExecutorService writer =
+      Executors.newSingleThreadExecutor(
+          new NamingThreadFactory(new DaemonThreadFactory(), "Mattermost build history writer"));
+
+  BuildHistoryIndex() {}
+
+  static BuildHistoryIndex get() {
+    return instance;
+  }
+
+  /** The history of the build's job as it was before the build completed. */
+  @SuppressWarnings("rawtypes")
+  BuildHistory before(Run build) {
+    Job job = build.getParent();
+    String name = job.getFullName();
+    BuildHistory history = histories.get(name);
+    if (history == null) {
+      history = read(job);
+      if (history != null) {
+        BuildHistory raced = histories.putIfAbsent(name, history);
+        history = raced != null ? raced : history;
+      }
+    }
+    return before(history, build);
+  }
+
+  /** Records that the build completed. */
+  @SuppressWarnings("rawtypes")
+  void completed(Run build) {
+    Job job = build.getParent();
+    Result result = build.getResult();
+    if (result == null) {
+      return;
+    }
+    String name = job.getFullName();
+    // builds are loaded outside the map, so other jobs do not wait for the disk; a concurrent
+    // update of the same job makes this one start over
+    while (true) {
+      BuildHistory current = histories.get(name);
+      BuildHistory history = current != null ? current : read(job);
+      BuildHistory updated;
+      if (history != null && history.getLastNumber() > build.getNumber()) {
+        // completed after a later build of the same job: rebuild around the latest one
+        Run last = job.getLastCompletedBuild();
+        updated =
+            BuildHistory.scan(last)
+                .next(last.getNumber(), last.getResult(), last.getTimeInMillis());
+      } else {
+        updated = before(history, build).next(build.getNumber(), result, build.getTimeInMillis());
+      }
+      if (current == null
+          ? histories.putIfAbsent(name, updated) == null
+          : histories.replace(name, current, updated)) {
+        break;
+      }
+    }
+    writer.execute(
+        () -> {
+          // a later build may have completed meanwhile; only its history is worth writing
+          BuildHistory latest = histories.get(name);
+          if (latest != null) {
+            write(job, latest);
+          }
+        });
+  }
+
+  /**
+   * The history before the build, taken from the given one if it ends with the build's
+   * predecessor and rebuilt from the builds otherwise.
+   */
+  @SuppressWarnings("rawtypes")
+  private static BuildHistory before(@CheckForNull BuildHistory history, Run build) {
+    if (history != null) {
+      Run previous = build.getPreviousCompletedBuild();
+      BuildHistory before =
+          history.before(build.getNumber(), previous != null ? previous.getNumber() : 0);
+      if (before != null) {
+        return before;
+      }
+    }
+    return BuildHistory.scan(build);
+  }
+
+  /** Forgets the history of the build's job if it mentions the build, which is being deleted. */
+  @SuppressWarnings("rawtypes")
+  void deleted(Run build) {
+    String name = build.getParent().getFullName();
+    BuildHistory history = histories.get(name);
+    if (history == null
+        || history.getLastNumber() == build.getNumber()
+        || history.getLastSuccessNumber() == build.getNumber()) {
+      histories.remove(name);
+      try {
+        Files.deleteIfExists(file(build.getParent()).toPath());
+      } catch (IOException e) {
+        logger.log(Level.FINE, "Could not delete the Mattermost build history of " + name, e);
+      }
+    }
+  }
+
+  /** Forgets the history kept under the old name of a job that was moved or renamed. */
+  void moved(String oldFullName) {
+    histories.remove(oldFullName);
+  }
+
+  @SuppressWarnings("rawtypes")
+  @CheckForNull
+  private static BuildHistory read(Job job) {
+    File file = file(job);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      if (!lines.isEmpty()) {
+        return BuildHistory.fromLine(lines.get(0));
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Could not read " + file + ", rebuilding it", e);
+    }
+    return null;
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static void write(Job job, BuildHistory history) {
+    File file = file(job);
+    File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+    try {
+      try (Writer out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+        out.write(history.toLine());
+        out.write('\n');
+      }
+      Files.move(
+          tmp.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not write " + file, e);
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static File file(Job job) {
+    return new File(job.getRootDir(), FILE_NAME);
+  }
+}
@@ -0,0 +1,143 @@
+package jenkins.plugins.mattermost;
+
+import hudson.scm.ChangeLogSet;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import jenkins.util.SystemProperties;
+
+/**
+ * The authors and the number of files of a change set, gathered in one pass over its entries with
+ * bounded memory. Distinct file paths are counted exactly up to {@link #EXACT_FILE_COUNT}, and
+ * estimated beyond that, so a commit touching tens of thousands of files costs a few kilobytes.
+ * The first {@link #MAX_AUTHORS} authors are kept, in the order they appear.
+ */
+final class ChangeSetSummary {
+
+  static final int MAX_AUTHORS =
+      SystemProperties.getInteger(ChangeSetSummary.class.getName() + ".maxAuthors", 20);
+
+  static final int EXACT_FILE_COUNT =
+      SystemProperties.getInteger(ChangeSetSummary.class.getName() + ".exactFileCount", 10000);
+
+  /** Registers of the estimate; 2^12 of them give a standard error of about 1.6%. */
+  private static final int REGISTER_BITS = 12;
+
+  private final int maxAuthors;
+  private final int exactFileCount;
+
+  private final Set<String> authors = new LinkedHashSet<>();
+  private boolean moreAuthors;
+  private int entries;
+  /** The distinct paths while counted exactly, then {@code null}. */
+  private Set<String> paths = new HashSet<>();
+  private byte[] registers;
+
+  ChangeSetSummary(int maxAuthors, int exactFileCount) {
+    this.maxAuthors = Math.max(1, maxAuthors);
+    this.exactFileCount = Math.max(0, exactFileCount);
+  }
+
+  /** Summarizes the entries of the change set. */
+  static ChangeSetSummary of(ChangeLogSet<?> changeSet) {
+    ChangeSetSummary summary = new ChangeSetSummary(MAX_AUTHORS, EXACT_FILE_COUNT);
+    for (ChangeLogSet.Entry entry : changeSet) {
+      summary.addEntry(entry.getAuthor().getDisplayName());
+      for (ChangeLogSet.AffectedFile file : entry.getAffectedFiles()) {
+        summary.addPath(file.getPath());
+      }
+    }
+    return summary;
+  }
+
+  void addEntry(String author) {
+    entries++;
+    if (authors.size() < maxAuthors) {
+      authors.add(author);
+    } else if (!authors.contains(author)) {
+      moreAuthors = true;
+    }
+  }
+
+  void addPath(String path) {
+    if (paths != null) {
+      if (paths.add(path) && paths.size() > exactFileCount) {
+        registers = new byte[1 << REGISTER_BITS];
+        for (String counted : paths) {
+          estimate(counted);
+        }
+        paths = null;
+      }
+    } else {
+      estimate(path);
+    }
+  }
+
+  private void estimate(String path) {
+    long hash = hash(path);
+    int register = (int) (hash >>> (64 - REGISTER_BITS));
+    long rest = hash << REGISTER_BITS | 1L << (REGISTER_BITS - 1);
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+    if (registers[register] < rank) {
+      registers[register] = rank;
+    }
+  }
+
+  /** 64-bit FNV-1a over the UTF-8 bytes, with the MurmurHash3 finalizer to spread the bits. */
+  private static long hash(String path) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  boolean isEmpty() {
+    return entries == 0;
+  }
+
+  /** The first authors of the changes, in order. */
+  Set<String> getAuthors() {
+    return authors;
+  }
+
+  /** Whether there are authors beyond those kept. */
+  boolean hasMoreAuthors() {
+    return moreAuthors;
+  }
+
+  /** Whether {@link #getFileCount} is an estimate. */
+  boolean isFileCountApproximate() {
+    return paths == null;
+  }
+
+  /** The number of distinct files changed, estimated if there are very many. */
+  int getFileCount() {
+    if (paths != null) {
+      return paths.size();
+    }
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte rank : registers) {
+      sum += 1.0 / (1L << rank);
+      if (rank == 0) {
+        zeros++;
+      }
+    }
+    double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // few files for that many registers: linear counting is more accurate
+      estimate = m * Math.log((double) m / zeros);
+    }
+    // more than the exact threshold were seen
+    return (int) Math.round(Math.max(estimate, exactFileCount + 1));
+  }
+}
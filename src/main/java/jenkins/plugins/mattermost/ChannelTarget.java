@@ -0,0 +1,95 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.CheckForNull;
+
+/**
+ * One parsed entry of a channel spec. Supported formats are {@code channel}, {@code @dmchannel},
+ * {@code user@channel} and {@code user@@dmchannel}; an empty entry posts to the webhook's default
+ * channel.
+ */
+final class ChannelTarget {
+
+  static final String DEFAULT_USER = "jenkins";
+
+  private final String spec;
+  private final String user;
+  private final String room;
+  private final @CheckForNull String error;
+
+  private ChannelTarget(String spec, String user, String room, @CheckForNull String error) {
+    this.spec = spec;
+    this.user = user;
+    this.room = room;
+    this.error = error;
+  }
+
+  /** Parses a comma or semicolon separated channel spec. */
+  static List<ChannelTarget> parseAll(String channels) {
+    String[] specs = channels.split("[,;]+");
+    List<ChannelTarget> targets = new ArrayList<>(specs.length);
+    for (String spec : specs) {
+      targets.add(parse(spec));
+    }
+    return Collections.unmodifiableList(targets);
+  }
+
+  static ChannelTarget parse(String spec) {
+    String trimmed = spec.trim();
+    String user = DEFAULT_USER;
+    String room = trimmed;
+    int atPos = trimmed.indexOf('@');
+    if (atPos > 0) {
+      if (atPos == trimmed.length() - 1) {
+        return invalid(trimmed, "no channel after '@'");
+      }
+      user = trimmed.substring(0, atPos).trim();
+      room = trimmed.substring(atPos + 1).trim();
+    }
+    if (containsWhitespace(user) || containsWhitespace(room)) {
+      return invalid(trimmed, "user and channel names cannot contain spaces");
+    }
+    return new ChannelTarget(trimmed, user, room, null);
+  }
+
+  private static ChannelTarget invalid(String spec, String reason) {
+    return new ChannelTarget(
+        spec, DEFAULT_USER, "", "Malformed Mattermost channel '" + spec + "': " + reason);
+  }
+
+  private static boolean containsWhitespace(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (Character.isWhitespace(s.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The entry as configured, trimmed. */
+  String getSpec() {
+    return spec;
+  }
+
+  String getUser() {
+    return user;
+  }
+
+  /** The channel to post to; empty for the webhook's default channel. */
+  String getRoom() {
+    return room;
+  }
+
+  /** Why the entry could not be parsed, or {@code null} if it is valid. */
+  @CheckForNull
+  String getError() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return room.isEmpty() ? "(default)" : room;
+  }
+}
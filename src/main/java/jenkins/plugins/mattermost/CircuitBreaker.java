@@ -0,0 +1,266 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import jenkins.util.SystemProperties;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+
+/**
+ * Circuit breaker for one Mattermost host. It opens when too many of the recent posts failed or
+ * were slow, so that while Mattermost is down posts fail immediately instead of each waiting for
+ * the connect timeout. After a while a single probe is let through, which either closes the breaker
+ * again or keeps it open.
+ */
+public final class CircuitBreaker {
+
+  private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+  static final int WINDOW_SIZE =
+      SystemProperties.getInteger(CircuitBreaker.class.getName() + ".windowSize", 20);
+
+  static final int MINIMUM_CALLS =
+      SystemProperties.getInteger(CircuitBreaker.class.getName() + ".minimumCalls", 5);
+
+  static final int FAILURE_RATE_THRESHOLD =
+      SystemProperties.getInteger(CircuitBreaker.class.getName() + ".failureRateThreshold", 50);
+
+  static final int SLOW_CALL_RATE_THRESHOLD =
+      SystemProperties.getInteger(CircuitBreaker.class.getName() + ".slowCallRateThreshold", 80);
+
+  static final long SLOW_CALL_DURATION_MILLIS =
+      SystemProperties.getLong(CircuitBreaker.class.getName() + ".slowCallDurationMillis", 5000L);
+
+  static final long OPEN_DURATION_MILLIS =
+      TimeUnit.SECONDS.toMillis(
+          SystemProperties.getLong(CircuitBreaker.class.getName() + ".openDurationSeconds", 30L));
+
+  private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  /** Thrown into the result of a post that was not attempted because the breaker is open. */
+  public static final class OpenException extends IOException {
+    OpenException(String endpoint) {
+      super("Circuit breaker for " + endpoint + " is open, not posting");
+    }
+  }
+
+  private final String endpoint;
+  private final int minimumCalls;
+  private final int failureRateThreshold;
+  private final int slowCallRateThreshold;
+  private final long slowCallDurationMillis;
+  private final long openDurationMillis;
+
+  /** Outcomes of the most recent calls, as a ring buffer. Guarded by {@code this}. */
+  private final boolean[] failed;
+  private final boolean[] slow;
+  private int calls;
+  private int next;
+  private int failures;
+  private int slowCalls;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private boolean probeInFlight;
+
+  CircuitBreaker(
+      String endpoint,
+      int windowSize,
+      int minimumCalls,
+      int failureRateThreshold,
+      int slowCallRateThreshold,
+      long slowCallDurationMillis,
+      long openDurationMillis) {
+    this.endpoint = endpoint;
+    this.failed = new boolean[Math.max(1, windowSize)];
+    this.slow = new boolean[failed.length];
+    this.minimumCalls = Math.max(1, Math.min(minimumCalls, failed.length));
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.slowCallDurationMillis = slowCallDurationMillis;
+    this.openDurationMillis = openDurationMillis;
+  }
+
+  /** The breaker shared by every post to the given host. */
+  static CircuitBreaker forHost(HttpHost host) {
+    return breakers.computeIfAbsent(
+        host.toURI(),
+        endpoint ->
+            new CircuitBreaker(
+                endpoint,
+                WINDOW_SIZE,
+                MINIMUM_CALLS,
+                FAILURE_RATE_THRESHOLD,
+                SLOW_CALL_RATE_THRESHOLD,
+                SLOW_CALL_DURATION_MILLIS,
+                OPEN_DURATION_MILLIS));
+  }
+
+  /** Every breaker created so far, ordered by host. */
+  public static Collection<CircuitBreaker> all() {
+    ArrayList<CircuitBreaker> all = new ArrayList<>(breakers.values());
+    all.sort((a, b) -> a.endpoint.compareTo(b.endpoint));
+    return all;
+  }
+
+  /** Whether the result is a post that was short-circuited by an open breaker. */
+  static boolean isShortCircuited(PublishResult result) {
+    for (PublishResult channelResult : result.getChannelResults()) {
+      if (channelResult.getError() instanceof OpenException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the failure says something about the health of the host. Client errors such as an
+   * unknown channel do not.
+   */
+  static boolean isHostFailure(@CheckForNull PublishResult result) {
+    if (result == null) {
+      return true;
+    }
+    int status = result.getStatusCode();
+    return status == PublishResult.NO_RESPONSE
+        ? result.getError() instanceof IOException
+        : status >= 500 || status == HttpStatus.SC_REQUEST_TIMEOUT || status == 429;
+  }
+
+  /** The scheme, host and port this breaker guards. */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /** Percentage of the calls in the window that failed. */
+  public synchronized int getFailureRate() {
+    return calls == 0 ? 0 : failures * 100 / calls;
+  }
+
+  /** Percentage of the calls in the window that were slow. */
+  public synchronized int getSlowCallRate() {
+    return calls == 0 ? 0 : slowCalls * 100 / calls;
+  }
+
+  /** Time until a probe is let through, or an empty string unless the breaker is open. */
+  public synchronized String getRemainingOpenString() {
+    return state == State.OPEN ? Util.getTimeSpanString(remainingOpenMillis()) : "";
+  }
+
+  synchronized long remainingOpenMillis() {
+    return state == State.OPEN
+        ? Math.max(0, openedAt + openDurationMillis - System.currentTimeMillis())
+        : 0;
+  }
+
+  /** Whether posts fail fast, without even a probe being let through yet. */
+  synchronized boolean isOpen() {
+    return remainingOpenMillis() > 0;
+  }
+
+  /**
+   * Whether a post may be attempted. When the breaker has been open long enough this lets exactly
+   * one probe through; every permitted call must be followed by {@link #record}.
+   */
+  synchronized boolean tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (remainingOpenMillis() > 0) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        probeInFlight = false;
+        // fall through
+      case HALF_OPEN:
+      default:
+        if (probeInFlight) {
+          return false;
+        }
+        probeInFlight = true;
+        return true;
+    }
+  }
+
+  /** Records the outcome of a permitted post; {@code null} stands for an unexpected error. */
+  synchronized void record(@CheckForNull PublishResult result, long durationMillis) {
+    boolean isFailure = isHostFailure(result);
+    boolean isSlow = durationMillis >= slowCallDurationMillis;
+    if (state == State.HALF_OPEN) {
+      probeInFlight = false;
+      if (isFailure || isSlow) {
+        open("the probe " + (isFailure ? "failed" : "was slow"));
+      } else {
+        logger.info("Mattermost at " + endpoint + " recovered, closing circuit breaker");
+        state = State.CLOSED;
+        reset();
+      }
+      return;
+    }
+    if (state == State.OPEN) {
+      // a post that was started before the breaker opened
+      return;
+    }
+    if (calls == failed.length) {
+      failures -= failed[next] ? 1 : 0;
+      slowCalls -= slow[next] ? 1 : 0;
+    } else {
+      calls++;
+    }
+    failed[next] = isFailure;
+    slow[next] = isSlow;
+    failures += isFailure ? 1 : 0;
+    slowCalls += isSlow ? 1 : 0;
+    next = (next + 1) % failed.length;
+    if (calls >= minimumCalls) {
+      if (getFailureRate() >= failureRateThreshold) {
+        open(getFailureRate() + "% of the last " + calls + " posts failed");
+      } else if (getSlowCallRate() >= slowCallRateThreshold) {
+        open(getSlowCallRate() + "% of the last " + calls + " posts were slow");
+      }
+    }
+  }
+
+  private void open(String reason) {
+    logger.warning(
+        "Opening circuit breaker for Mattermost at "
+            + endpoint
+            + " because "
+            + reason
+            + "; posts will fail fast for "
+            + Util.getTimeSpanString(openDurationMillis));
+    state = State.OPEN;
+    openedAt = System.currentTimeMillis();
+    reset();
+  }
+
+  private void reset() {
+    calls = 0;
+    next = 0;
+    failures = 0;
+    slowCalls = 0;
+  }
+
+  /** Forgets every breaker. */
+  static void resetAll() {
+    breakers.clear();
+  }
+}
@@ -0,0 +1,60 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Hands messages over to the {@link MessageCoalescer}, which merges the messages posted to a
+ * channel within a short window into a single post.
+ */
+public class CoalescingMattermostService implements MattermostService {
+
+  private final String endpoint;
+  private final String room;
+  private final String icon;
+  private final long windowMillis;
+
+  public CoalescingMattermostService(String endpoint, String room, String icon, long windowMillis) {
+    this.endpoint = endpoint;
+    this.room = room;
+    this.icon = icon;
+    this.windowMillis = windowMillis;
+  }
+
+  public boolean publish(String message) {
+    return publish(message, "warning");
+  }
+
+  public boolean publish(String message, String color) {
+    return publish(message, "", color);
+  }
+
+  public boolean publish(String message, String text, String color) {
+    return publishAsync(message, text, color).join().isSuccess();
+  }
+
+  @Override
+  public CompletableFuture<PublishResult> publishAsync(String message, String text, String color) {
+    return MessageCoalescer.get()
+        .submit(endpoint, room, icon, new Attachment(message, text, color), windowMillis);
+  }
+
+  /** Adds the messages to the batches together, so they end up in the same post unless full. */
+  @Override
+  public CompletableFuture<PublishResult> publishAsync(
+      List<String> messages, String text, String color) {
+    List<CompletableFuture<PublishResult>> futures = new ArrayList<>();
+    for (String message : messages) {
+      futures.add(
+          MessageCoalescer.get()
+              .submit(endpoint, room, icon, new Attachment(message, text, color), windowMillis));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            ignored ->
+                PublishResult.ofSequence(
+                    futures.stream().map(CompletableFuture::join).collect(Collectors.toList())));
+  }
+}
@@ -0,0 +1,143 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import jenkins.util.SystemProperties;
+
+/**
+ * The commits of a build as listed in its notification: in the order of the change set, without
+ * duplicates, with titles cut to their first line and {@link #MAX_TITLE_LENGTH} characters, and at
+ * most {@link #MAX_COMMITS} of them followed by a "+N more" line. A list that is still too long
+ * for one post is {@link #split} into continuation posts.
+ */
+final class CommitList {
+
+  static final int MAX_COMMITS =
+      SystemProperties.getInteger(CommitList.class.getName() + ".maxCommits", 50);
+
+  static final int MAX_TITLE_LENGTH =
+      SystemProperties.getInteger(CommitList.class.getName() + ".maxTitleLength", 120);
+
+  /** The shortest part of a list worth posting beside the build status. */
+  static final int MIN_COMBINED_LENGTH = 200;
+
+  private static final String ELLIPSIS = "\u2026";
+
+  private final int maxCommits;
+  private final int maxTitleLength;
+
+  private final Set<String> lines = new LinkedHashSet<>();
+  private int more;
+
+  CommitList(int maxCommits, int maxTitleLength) {
+    this.maxCommits = Math.max(1, maxCommits);
+    this.maxTitleLength = Math.max(ELLIPSIS.length() + 1, maxTitleLength);
+  }
+
+  CommitList() {
+    this(MAX_COMMITS, MAX_TITLE_LENGTH);
+  }
+
+  /** Adds a commit with the given title and author, either of which may be {@code null}. */
+  void add(String title, String author) {
+    StringBuilder line = new StringBuilder();
+    if (title != null) {
+      line.append(title(title));
+    }
+    if (author != null) {
+      line.append(" [").append(author).append("]");
+    }
+    if (lines.size() < maxCommits) {
+      lines.add(line.toString());
+    } else if (!lines.contains(line.toString())) {
+      more++;
+    }
+  }
+
+  private String title(String message) {
+    int end = message.indexOf('\n');
+    String title = (end < 0 ? message : message.substring(0, end)).trim();
+    return title.length() <= maxTitleLength
+        ? title
+        : title.substring(0, maxTitleLength - ELLIPSIS.length()) + ELLIPSIS;
+  }
+
+  boolean isEmpty() {
+    return lines.isEmpty();
+  }
+
+  /** The list, one {@code "- "} line per commit. */
+  String render() {
+    StringBuilder list = new StringBuilder();
+    for (String line : lines) {
+      if (list.length() > 0) {
+        list.append('\n');
+      }
+      list.append("- ").append(line);
+    }
+    if (more > 0) {
+      list.append("\n+").append(more).append(" more");
+    }
+    return list.toString();
+  }
+
+  /**
+   * The longest message that, posted with the given text, stays within the post size the
+   * notifications are kept below.
+   */
+  static int maxMessageLength(String text) {
+    int overhead = new Attachment("", text, "").estimatedSize();
+    return Math.max(1, (Attachment.MAX_POST_SIZE - overhead) / 2);
+  }
+
+  /**
+   * The longest message that, posted with the given text as a second attachment beside the given
+   * one, stays within the post size; possibly 0 or less if the first one leaves no room.
+   */
+  static int maxMessageLengthBeside(String message, String text) {
+    int overhead =
+        new Attachment(message, text, "").estimatedSize()
+            + new Attachment("", text, "").estimatedSize();
+    // estimatedSize counts each message character twice, for escaping
+    return (Attachment.MAX_POST_SIZE - overhead) / 2;
+  }
+
+  /**
+   * Splits the message at line breaks into posts of at most {@code maxLength} characters. Posts
+   * after the first start with the first line of the message marked as continued, and a single
+   * line that does not fit is cut and ends with an ellipsis.
+   */
+  static List<String> split(String message, int maxLength) {
+    if (message.length() <= maxLength) {
+      return Collections.singletonList(message);
+    }
+    int firstBreak = message.indexOf('\n');
+    String header = (firstBreak < 0 ? message : message.substring(0, firstBreak)) + " (continued)";
+    if (header.length() > maxLength / 2) {
+      header = header.substring(0, maxLength / 2);
+    }
+    List<String> posts = new ArrayList<>();
+    StringBuilder post = new StringBuilder();
+    for (String line : message.split("\n", -1)) {
+      if (post.length() > 0 && post.length() + 1 + line.length() > maxLength) {
+        posts.add(post.toString());
+        post.setLength(0);
+        post.append(header);
+      }
+      if (post.length() > 0) {
+        post.append('\n');
+      }
+      int room = Math.max(0, maxLength - post.length());
+      if (line.length() <= room) {
+        post.append(line);
+      } else if (room >= ELLIPSIS.length()) {
+        post.append(line, 0, room - ELLIPSIS.length()).append(ELLIPSIS);
+      }
+    }
+    posts.add(post.toString());
+    return posts;
+  }
+}
@@ -0,0 +1,158 @@
+package jenkins.plugins.mattermost;
+
+import hudson.ProxyConfiguration;
+import hudson.util.Secret;
+import javax.annotation.CheckForNull;
+import jenkins.model.Jenkins;
+import jenkins.model.JenkinsLocationConfiguration;
+
+/**
+ * An immutable snapshot of the global Mattermost configuration, with its secrets already decrypted.
+ * The descriptor publishes a new snapshot whenever its configuration is loaded or changed, so
+ * notifications read plain fields instead of decrypting secrets and looking up the descriptor.
+ */
+public final class GlobalSettings {
+
+  /** The settings used before the descriptor is loaded, or when Jenkins is not running. */
+  static final GlobalSettings DEFAULT =
+      new GlobalSettings(
+          null, null, null, null, null, null, false, RetryPolicy.DEFAULT, 0, false);
+
+  private static volatile GlobalSettings current;
+
+  private final @CheckForNull String endpoint;
+  private final @CheckForNull String room;
+  private final @CheckForNull String icon;
+  private final @CheckForNull String buildServerUrl;
+  private final @CheckForNull String sendAs;
+  private final @CheckForNull ProxyConfiguration customProxy;
+  private final boolean queueNotifications;
+  private final RetryPolicy retryPolicy;
+  private final long coalescingWindowMillis;
+  private final boolean combineCommitList;
+
+  GlobalSettings(
+      @CheckForNull String endpoint,
+      @CheckForNull String room,
+      @CheckForNull String icon,
+      @CheckForNull String buildServerUrl,
+      @CheckForNull String sendAs,
+      @CheckForNull ProxyConfiguration customProxy,
+      boolean queueNotifications,
+      RetryPolicy retryPolicy,
+      long coalescingWindowMillis,
+      boolean combineCommitList) {
+    this.endpoint = endpoint;
+    this.room = room;
+    this.icon = icon;
+    this.buildServerUrl = buildServerUrl;
+    this.sendAs = sendAs;
+    this.customProxy = customProxy;
+    this.queueNotifications = queueNotifications;
+    this.retryPolicy = retryPolicy;
+    this.coalescingWindowMillis = coalescingWindowMillis;
+    this.combineCommitList = combineCommitList;
+  }
+
+  /** Takes a snapshot of the descriptor's configuration. */
+  static GlobalSettings of(MattermostNotifier.DescriptorImpl descriptor) {
+    ProxyConfiguration customProxy = null;
+    if (descriptor.isUseCustomProxy()) {
+      customProxy =
+          new ProxyConfiguration(
+              descriptor.getProxyServer(),
+              descriptor.getProxyPort(),
+              descriptor.getProxyUsername(),
+              plainText(descriptor.getProxyPassword()),
+              null,
+              null);
+    }
+    RetryPolicy retryPolicy = descriptor.getRetryPolicy();
+    return new GlobalSettings(
+        plainText(descriptor.getEndpoint()),
+        descriptor.getRoom(),
+        descriptor.getIcon(),
+        descriptor.getConfiguredBuildServerUrl(),
+        descriptor.getSendAs(),
+        customProxy,
+        descriptor.isQueueNotifications(),
+        retryPolicy != null ? retryPolicy : RetryPolicy.DEFAULT,
+        descriptor.getCoalescingWindowMillis(),
+        descriptor.isCombineCommitList());
+  }
+
+  private static String plainText(@CheckForNull Secret secret) {
+    return secret != null ? secret.getPlainText() : null;
+  }
+
+  /** The settings last published by the descriptor. */
+  public static GlobalSettings current() {
+    GlobalSettings settings = current;
+    if (settings != null) {
+      return settings;
+    }
+    if (Jenkins.getInstanceOrNull() == null) {
+      return DEFAULT;
+    }
+    MattermostNotifier.DescriptorImpl descriptor = StandardMattermostService.getServiceDescriptor();
+    return descriptor != null ? descriptor.getSettings() : DEFAULT;
+  }
+
+  /** Makes the given settings current; routes resolved with the previous ones are dropped. */
+  static void publish(GlobalSettings settings) {
+    current = settings;
+    ProxyRoute.invalidate();
+  }
+
+  @CheckForNull
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  @CheckForNull
+  public String getRoom() {
+    return room;
+  }
+
+  @CheckForNull
+  public String getIcon() {
+    return icon;
+  }
+
+  /** The configured Jenkins URL for links, or the one of the Jenkins location configuration. */
+  public String getBuildServerUrl() {
+    if (buildServerUrl == null || buildServerUrl.isEmpty()) {
+      // read on every call, since it is configured elsewhere
+      return JenkinsLocationConfiguration.get().getUrl();
+    }
+    return buildServerUrl;
+  }
+
+  @CheckForNull
+  public String getSendAs() {
+    return sendAs;
+  }
+
+  /** The custom proxy with its decrypted password, or {@code null} if none is configured. */
+  @CheckForNull
+  public ProxyConfiguration getCustomProxy() {
+    return customProxy;
+  }
+
+  public boolean isQueueNotifications() {
+    return queueNotifications;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public long getCoalescingWindowMillis() {
+    return coalescingWindowMillis;
+  }
+
+  /** Whether the commit list is posted together with the build status, as a second attachment. */
+  public boolean isCombineCommitList() {
+    return combineCommitList;
+  }
+}
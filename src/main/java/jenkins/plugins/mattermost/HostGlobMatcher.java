@@ -0,0 +1,134 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Matches host names against a list of globs such as the no-proxy hosts of Jenkins, where {@code *}
+ * matches any characters and {@code ?} a single one, without regular expressions. Plain host names
+ * are looked up in a set and {@code *.domain} entries in a trie of reversed labels, so the cost of
+ * a lookup depends on the length of the host rather than on the number of entries; only the rare
+ * globs with other wildcards are tried one by one. Host names are compared case-insensitively.
+ */
+final class HostGlobMatcher {
+
+  private static final HostGlobMatcher EMPTY = new HostGlobMatcher();
+
+  private final Set<String> exactHosts = new HashSet<>();
+  private final Node domains = new Node();
+  private final List<String> otherGlobs = new ArrayList<>();
+
+  private HostGlobMatcher() {}
+
+  /** Compiles a list of globs separated by whitespace, commas or {@code |}, as Jenkins does. */
+  static HostGlobMatcher compile(@CheckForNull String globs) {
+    if (globs == null || globs.trim().isEmpty()) {
+      return EMPTY;
+    }
+    List<String> list = new ArrayList<>();
+    Collections.addAll(list, globs.split("[ \t\n,|]+"));
+    return compile(list);
+  }
+
+  static HostGlobMatcher compile(Iterable<String> globs) {
+    HostGlobMatcher matcher = new HostGlobMatcher();
+    for (String glob : globs) {
+      String g = glob.trim().toLowerCase(Locale.ENGLISH);
+      if (g.isEmpty()) {
+        continue;
+      }
+      boolean hasWildcard = g.indexOf('*') >= 0 || g.indexOf('?') >= 0;
+      if (!hasWildcard) {
+        matcher.exactHosts.add(g);
+      } else if (g.startsWith("*.") && g.indexOf('*', 1) < 0 && g.indexOf('?') < 0) {
+        matcher.addDomain(g.substring(2));
+      } else {
+        matcher.otherGlobs.add(g);
+      }
+    }
+    return matcher;
+  }
+
+  /** Adds a domain whose subdomains match, walking its labels from the right. */
+  private void addDomain(String domain) {
+    Node node = domains;
+    int end = domain.length();
+    while (end >= 0) {
+      int dot = domain.lastIndexOf('.', end - 1);
+      String label = domain.substring(dot + 1, end);
+      node = node.children.computeIfAbsent(label, k -> new Node());
+      end = dot;
+    }
+    node.subdomainsMatch = true;
+  }
+
+  /** Whether the host matches one of the globs. */
+  boolean matches(String host) {
+    String h = host.toLowerCase(Locale.ENGLISH);
+    if (exactHosts.contains(h) || matchesDomain(h)) {
+      return true;
+    }
+    for (String glob : otherGlobs) {
+      if (matchesGlob(glob, h)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean matchesDomain(String host) {
+    Node node = domains;
+    int end = host.length();
+    while (end >= 0 && !node.children.isEmpty()) {
+      int dot = host.lastIndexOf('.', end - 1);
+      node = node.children.get(host.substring(dot + 1, end));
+      if (node == null) {
+        return false;
+      }
+      if (node.subdomainsMatch && dot >= 0) {
+        // *.domain matches anything ending in .domain
+        return true;
+      }
+      end = dot;
+    }
+    return false;
+  }
+
+  /** Matches a glob with {@code *} and {@code ?} against the whole text, backtracking greedily. */
+  static boolean matchesGlob(String glob, String text) {
+    int g = 0;
+    int t = 0;
+    int starGlob = -1;
+    int starText = 0;
+    while (t < text.length()) {
+      if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == text.charAt(t))) {
+        g++;
+        t++;
+      } else if (g < glob.length() && glob.charAt(g) == '*') {
+        starGlob = g++;
+        starText = t;
+      } else if (starGlob >= 0) {
+        g = starGlob + 1;
+        t = ++starText;
+      } else {
+        return false;
+      }
+    }
+    while (g < glob.length() && glob.charAt(g) == '*') {
+      g++;
+    }
+    return g == glob.length();
+  }
+
+  private static final class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private boolean subdomainsMatch;
+  }
+}
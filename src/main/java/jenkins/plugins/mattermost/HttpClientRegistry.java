@@ -0,0 +1,280 @@
+package jenkins.plugins.mattermost;
+
+import hudson.ProxyConfiguration;
+import hudson.init.Terminator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import jenkins.util.SystemProperties;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * Plugin-wide registry of pooled HTTP clients, one per endpoint host and effective proxy settings,
+ * so that consecutive posts to the same Mattermost server reuse warm keep-alive connections.
+ */
+public final class HttpClientRegistry {
+
+  private static final Logger logger = Logger.getLogger(HttpClientRegistry.class.getName());
+
+  static final int MAX_CONNECTIONS_PER_ROUTE =
+      SystemProperties.getInteger(HttpClientRegistry.class.getName() + ".maxConnectionsPerRoute", 10);
+
+  static final long IDLE_TIMEOUT_SECONDS =
+      SystemProperties.getLong(HttpClientRegistry.class.getName() + ".idleTimeoutSeconds", 60L);
+
+  private static final ConcurrentMap<Key, Pooled> clients = new ConcurrentHashMap<>();
+
+  private HttpClientRegistry() {}
+
+  /**
+   * Borrows the shared client for the given target, creating it on first use. Callers close the
+   * returned lease, not the client, once their request completed.
+   *
+   * @param proxyKey the {@linkplain #proxyKey key} of the proxy, computed once per proxy settings
+   */
+  static Lease acquire(
+      HttpHost target, @CheckForNull ProxyConfiguration proxy, @CheckForNull String proxyKey) {
+    Key key = new Key(target, proxyKey);
+    while (true) {
+      Pooled pooled = clients.get(key);
+      if (pooled == null) {
+        synchronized (clients) {
+          pooled = clients.get(key);
+          if (pooled == null) {
+            retire(key.target);
+            pooled = new Pooled(create(key, proxy));
+            clients.put(key, pooled);
+          }
+        }
+      }
+      if (pooled.enter()) {
+        return new Lease(pooled);
+      }
+      // retired by a concurrent change of the proxy settings, look the new client up
+    }
+  }
+
+  /**
+   * Identifies the proxy settings a client is built with: the proxy's address and a digest of its
+   * user and password, so the registry does not hold the password. Returns {@code null} for direct
+   * connections.
+   */
+  @CheckForNull
+  static String proxyKey(@CheckForNull ProxyConfiguration proxy) {
+    if (proxy == null) {
+      return null;
+    }
+    String credentials = proxy.getUserName() + '\0' + proxy.getPassword();
+    try {
+      byte[] hash =
+          MessageDigest.getInstance("SHA-256").digest(credentials.getBytes(StandardCharsets.UTF_8));
+      return proxy.name + ':' + proxy.port + ':' + Base64.getEncoder().encodeToString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform provides SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Number of clients currently held by the registry. */
+  static int size() {
+    return clients.size();
+  }
+
+  /**
+   * Closes every pooled client once its requests in flight completed; called when Jenkins shuts
+   * down or the plugin is unloaded.
+   */
+  @Terminator(requires = MattermostExecutors.NOTIFICATIONS_DRAINED)
+  public static void shutdown() {
+    synchronized (clients) {
+      for (Pooled pooled : clients.values()) {
+        pooled.retire();
+      }
+      clients.clear();
+    }
+  }
+
+  /**
+   * The proxy settings of a host only ever change as a whole, so a client built for the previous
+   * settings is not handed out again. Its pool is released once the requests still using it
+   * completed.
+   */
+  private static void retire(HttpHost target) {
+    for (Map.Entry<Key, Pooled> entry : clients.entrySet()) {
+      if (entry.getKey().target.equals(target)) {
+        clients.remove(entry.getKey());
+        entry.getValue().retire();
+      }
+    }
+  }
+
+  private static void close(CloseableHttpClient client) {
+    try {
+      client.close();
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Error closing Mattermost HTTP client", e);
+    }
+  }
+
+  private static CloseableHttpClient create(Key key, @CheckForNull ProxyConfiguration proxy) {
+    Registry<ConnectionSocketFactory> socketFactories =
+        RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", new SSLConnectionSocketFactory(SSLContexts.createDefault()))
+            .build();
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(socketFactories);
+    connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_ROUTE);
+    connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+    connectionManager.setValidateAfterInactivity(2000);
+
+    HttpClientBuilder clientBuilder =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setRedirectStrategy(new LaxRedirectStrategy())
+            .setKeepAliveStrategy(KEEP_ALIVE)
+            .evictExpiredConnections()
+            .evictIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    if (proxy != null) {
+      HttpHost proxyHost = new HttpHost(proxy.name, proxy.port);
+      clientBuilder.setRoutePlanner(new DefaultProxyRoutePlanner(proxyHost));
+      String username = proxy.getUserName();
+      // Consider it to be passed if username specified. Sufficient?
+      if (username != null && !username.isEmpty()) {
+        logger.info("Using proxy authentication (user=" + username + ")");
+        BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(
+            new AuthScope(proxyHost.getHostName(), proxy.port),
+            new UsernamePasswordCredentials(username, proxy.getPassword()));
+        clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+      }
+    }
+    logger.fine("Created pooled Mattermost HTTP client for " + key.target.toHostString());
+    return clientBuilder.build();
+  }
+
+  /** Honours the server's keep-alive hint but never keeps a connection longer than the idle timeout. */
+  private static final ConnectionKeepAliveStrategy KEEP_ALIVE =
+      (response, context) -> {
+        long serverHint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        long cap = TimeUnit.SECONDS.toMillis(IDLE_TIMEOUT_SECONDS);
+        return serverHint > 0 ? Math.min(serverHint, cap) : cap;
+      };
+
+  /** A borrowed client; closing the lease returns it to the registry. */
+  static final class Lease implements AutoCloseable {
+    private final Pooled pooled;
+    private boolean closed;
+
+    private Lease(Pooled pooled) {
+      this.pooled = pooled;
+    }
+
+    CloseableHttpClient client() {
+      return pooled.client;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        pooled.leave();
+      }
+    }
+  }
+
+  /** A client with the number of requests using it, closed once retired and no longer used. */
+  private static final class Pooled {
+    private final CloseableHttpClient client;
+    private int users;
+    private boolean retired;
+
+    Pooled(CloseableHttpClient client) {
+      this.client = client;
+    }
+
+    synchronized boolean enter() {
+      if (retired) {
+        return false;
+      }
+      users++;
+      return true;
+    }
+
+    void leave() {
+      boolean unused;
+      synchronized (this) {
+        unused = --users == 0 && retired;
+      }
+      if (unused) {
+        close(client);
+      }
+    }
+
+    void retire() {
+      boolean unused;
+      synchronized (this) {
+        retired = true;
+        unused = users == 0;
+      }
+      if (unused) {
+        close(client);
+      }
+    }
+  }
+
+  private static final class Key {
+    private final HttpHost target;
+    private final @CheckForNull String proxyKey;
+
+    Key(HttpHost target, @CheckForNull String proxyKey) {
+      this.target = target;
+      this.proxyKey = proxyKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return target.equals(other.target) && Objects.equals(proxyKey, other.proxyKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(target, proxyKey);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package jenkins.plugins.mattermost;
+
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/** Thread pools shared by all Mattermost notifications. */
+public final class MattermostExecutors {
+
+  private static final Logger logger = Logger.getLogger(MattermostExecutors.class.getName());
+
+  /** Reached once notifications handed off by builds have been sent or given up on. */
+  static final String NOTIFICATIONS_DRAINED = "Mattermost notifications drained";
+
+  static final int DISPATCHER_THREADS =
+      SystemProperties.getInteger(MattermostExecutors.class.getName() + ".dispatcherThreads", 4);
+
+  static final int DISPATCHER_QUEUE_SIZE =
+      SystemProperties.getInteger(MattermostExecutors.class.getName() + ".dispatcherQueueSize", 1024);
+
+  static final int SHUTDOWN_DRAIN_SECONDS =
+      SystemProperties.getInteger(
+          MattermostExecutors.class.getName() + ".shutdownDrainSeconds", 10);
+
+  static final int PUBLISHER_THREADS =
+      SystemProperties.getInteger(MattermostExecutors.class.getName() + ".publisherThreads", 8);
+
+  static final int PUBLISHER_QUEUE_SIZE =
+      SystemProperties.getInteger(MattermostExecutors.class.getName() + ".publisherQueueSize", 256);
+
+  private static ThreadPoolExecutor dispatcher;
+  private static ThreadPoolExecutor publisher;
+
+  private MattermostExecutors() {}
+
+  /**
+   * Bounded pool that renders and sends the notifications handed off by builds, so that builds do
+   * not wait for Mattermost. It rejects work when saturated; callers then do it themselves.
+   */
+  static synchronized ExecutorService dispatcher() {
+    if (dispatcher == null || dispatcher.isShutdown()) {
+      dispatcher =
+          new ThreadPoolExecutor(
+              DISPATCHER_THREADS,
+              DISPATCHER_THREADS,
+              60L,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(DISPATCHER_QUEUE_SIZE),
+              new NamingThreadFactory(new DaemonThreadFactory(), "Mattermost dispatcher"),
+              new ThreadPoolExecutor.AbortPolicy());
+      dispatcher.allowCoreThreadTimeOut(true);
+    }
+    return dispatcher;
+  }
+
+  /**
+   * Bounded pool that performs the individual HTTP posts. Posts are handed to it by futures that
+   * may complete on the shared {@link Timer} threads, which must not block on HTTP, so when it is
+   * saturated it rejects them: their futures complete exceptionally with a {@link
+   * java.util.concurrent.RejectedExecutionException} and the {@link RetryPolicy} tries them again
+   * later.
+   */
+  static synchronized ExecutorService publisher() {
+    if (publisher == null || publisher.isShutdown()) {
+      publisher =
+          new ThreadPoolExecutor(
+              PUBLISHER_THREADS,
+              PUBLISHER_THREADS,
+              60L,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(PUBLISHER_QUEUE_SIZE),
+              new NamingThreadFactory(new DaemonThreadFactory(), "Mattermost publisher"),
+              new ThreadPoolExecutor.AbortPolicy());
+      publisher.allowCoreThreadTimeOut(true);
+    }
+    return publisher;
+  }
+
+  /**
+   * Returns a future that completes after the given delay, without occupying a thread while
+   * waiting.
+   */
+  static CompletableFuture<Void> delay(long millis) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    if (millis <= 0) {
+      future.complete(null);
+    } else {
+      Timer.get().schedule(() -> future.complete(null), millis, TimeUnit.MILLISECONDS);
+    }
+    return future;
+  }
+
+  /**
+   * Gives notifications that were handed off by builds up to {@link #SHUTDOWN_DRAIN_SECONDS} to be
+   * sent before the HTTP clients are closed.
+   */
+  @Terminator(attains = NOTIFICATIONS_DRAINED)
+  public static void drain() throws InterruptedException {
+    ThreadPoolExecutor executor;
+    synchronized (MattermostExecutors.class) {
+      executor = dispatcher;
+      dispatcher = null;
+    }
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    if (!executor.awaitTermination(SHUTDOWN_DRAIN_SECONDS, TimeUnit.SECONDS)) {
+      int dropped = executor.shutdownNow().size();
+      logger.warning(
+          "Gave up on Mattermost notifications of "
+              + (dropped + executor.getActiveCount())
+              + " job(s) after waiting "
+              + SHUTDOWN_DRAIN_SECONDS
+              + "s for them to be sent");
+    }
+  }
+
+  @Terminator(requires = NOTIFICATIONS_DRAINED)
+  public static synchronized void shutdown() {
+    if (publisher != null) {
+      publisher.shutdown();
+      publisher = null;
+    }
+  }
+}
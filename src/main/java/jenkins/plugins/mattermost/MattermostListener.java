@@ -1,15 +1,24 @@
 package jenkins.plugins.mattermost;
 
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.model.Saveable;
 import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
 import hudson.tasks.Publisher;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
 
 @Extension
 @SuppressWarnings("rawtypes")
@@ -17,13 +26,24 @@ public class MattermostListener extends RunListener<AbstractBuild> {
 
   private static final Logger logger = Logger.getLogger(MattermostListener.class.getName());
 
+  /**
+   * The notifier of each project by full name, or an empty entry for projects without one, so that
+   * builds of those do not scan their publishers. Entries are dropped when a project changes.
+   */
+  private static final ConcurrentMap<String, Optional<MattermostNotifier>> notifiers =
+      new ConcurrentHashMap<>();
+
   public MattermostListener() {
     super(AbstractBuild.class);
   }
 
   @Override
   public void onCompleted(AbstractBuild r, TaskListener listener) {
-    getNotifier(r.getProject(), listener).completed(r);
+    MattermostNotifier notifier = getMattermostNotifier(r.getProject());
+    if (notifier != null) {
+      NotificationDispatcher.get().completed(notifier, r, listener);
+      BuildHistoryIndex.get().completed(r);
+    }
     super.onCompleted(r, listener);
   }
 
@@ -35,8 +55,9 @@ public class MattermostListener extends RunListener<AbstractBuild> {
 
   @Override
   public void onDeleted(AbstractBuild r) {
-    // getNotifier(r.getProject()).deleted(r);
-    // super.onDeleted(r);
+    if (getMattermostNotifier(r.getProject()) != null) {
+      BuildHistoryIndex.get().deleted(r);
+    }
   }
 
   @Override
@@ -45,14 +66,64 @@ public class MattermostListener extends RunListener<AbstractBuild> {
     // super.onFinalized(r);
   }
 
-  @SuppressWarnings("unchecked")
   FineGrainedNotifier getNotifier(AbstractProject project, TaskListener listener) {
+    MattermostNotifier notifier = getMattermostNotifier(project);
+    if (notifier != null) {
+      return new ActiveNotifier(notifier, (BuildListener) listener, new JenkinsTokenExpander(listener));
+    }
+    return new DisabledNotifier();
+  }
+
+  @CheckForNull
+  MattermostNotifier getMattermostNotifier(AbstractProject project) {
+    return notifiers.computeIfAbsent(project.getFullName(), name -> findNotifier(project)).orElse(null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Optional<MattermostNotifier> findNotifier(AbstractProject project) {
     Map<Descriptor<Publisher>, Publisher> map = project.getPublishersList().toMap();
     for (Publisher publisher : map.values()) {
       if (publisher instanceof MattermostNotifier) {
-        return new ActiveNotifier((MattermostNotifier) publisher, (BuildListener) listener, new JenkinsTokenExpander(listener));
+        return Optional.of((MattermostNotifier) publisher);
+      }
+    }
+    return Optional.empty();
+  }
+
+  static void invalidate(String fullName) {
+    notifiers.remove(fullName);
+  }
+
+  /** Drops the cached notifier of projects that are reconfigured, moved or deleted. */
+  @Extension
+  public static final class ItemChangeListener extends ItemListener {
+    @Override
+    public void onUpdated(Item item) {
+      invalidate(item.getFullName());
+    }
+
+    @Override
+    public void onDeleted(Item item) {
+      invalidate(item.getFullName());
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+      // also fired for renames, with the full names onRenamed does not provide
+      invalidate(oldFullName);
+      invalidate(newFullName);
+      BuildHistoryIndex.get().moved(oldFullName);
+    }
+  }
+
+  /** Drops the cached notifier when publishers are changed and saved without reconfiguring. */
+  @Extension
+  public static final class ProjectSaveListener extends SaveableListener {
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+      if (o instanceof AbstractProject) {
+        invalidate(((AbstractProject) o).getFullName());
       }
     }
-    return new DisabledNotifier();
   }
 }
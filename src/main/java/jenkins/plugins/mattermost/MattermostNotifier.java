@@ -28,6 +28,7 @@ import org.kohsuke.stapler.verb.POST;
 
 import javax.annotation.CheckForNull;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,6 +63,9 @@ public class MattermostNotifier extends Notifier {
   private String customAttachmentMessage;
   private boolean includeCustomMessage;
   private String customMessage;
+  /** The custom messages, compiled whenever they are configured or loaded. */
+  private transient volatile MessageTemplate customAttachmentMessageTemplate;
+  private transient volatile MessageTemplate customMessageTemplate;
 
   @Override
   public DescriptorImpl getDescriptor() {
@@ -169,6 +173,16 @@ public class MattermostNotifier extends Notifier {
     return customMessage;
   }
 
+  /** The custom attachment message, parsed once for its configured text. */
+  MessageTemplate getCustomAttachmentMessageTemplate() {
+    return customAttachmentMessageTemplate;
+  }
+
+  /** The custom message, parsed once for its configured text. */
+  MessageTemplate getCustomMessageTemplate() {
+    return customMessageTemplate;
+  }
+
   public void setEndpoint(String endpoint) {
     this.endpoint = Secret.fromString(endpoint);
   }
@@ -273,6 +287,7 @@ public class MattermostNotifier extends Notifier {
   @DataBoundSetter
   public void setCustomAttachmentMessage(@CheckForNull String customAttachmentMessage) {
     this.customAttachmentMessage = fixNull(customAttachmentMessage);
+    this.customAttachmentMessageTemplate = MessageTemplate.compile(this.customAttachmentMessage);
   }
 
   @DataBoundSetter
@@ -285,6 +300,7 @@ public class MattermostNotifier extends Notifier {
   public void setCustomMessage(@CheckForNull String customMessage)
   {
     this.customMessage = fixNull(customMessage);
+    this.customMessageTemplate = MessageTemplate.compile(this.customMessage);
   }
 
 //  @DataBoundConstructor
@@ -365,6 +381,18 @@ public class MattermostNotifier extends Notifier {
     } else {
       this.customMessage = null;
     }
+    compileTemplates();
+  }
+
+  /** Compiles the custom messages of a notifier loaded from its job's configuration. */
+  protected Object readResolve() {
+    compileTemplates();
+    return this;
+  }
+
+  private void compileTemplates() {
+    customAttachmentMessageTemplate = MessageTemplate.compile(customAttachmentMessage);
+    customMessageTemplate = MessageTemplate.compile(customMessage);
   }
 
   public BuildStepMonitor getRequiredMonitorService() {
@@ -372,39 +400,61 @@ public class MattermostNotifier extends Notifier {
   }
 
   public MattermostService newMattermostService(AbstractBuild r, BuildListener listener) {
+    return new NotificationContext(this, r, listener).getService();
+  }
+
+  /** The service for this notifier, with variables expanded from the given build environment. */
+  public MattermostService newMattermostService(EnvVars env) {
+    return newMattermostService(
+        getExpandedEndpoint(env), getExpandedRoom(env), getExpandedIcon(env));
+  }
+
+  /** The service posting to the given endpoint, channels and icon, after expansion. */
+  static MattermostService newMattermostService(String endpoint, String room, String icon) {
+    GlobalSettings settings = GlobalSettings.current();
+    if (settings.isQueueNotifications()) {
+      return new QueuedMattermostService(endpoint, room, icon);
+    }
+    long coalescingWindowMillis = settings.getCoalescingWindowMillis();
+    if (coalescingWindowMillis > 0) {
+      return new CoalescingMattermostService(endpoint, room, icon, coalescingWindowMillis);
+    }
+    return StandardMattermostService.get(endpoint, room, icon);
+  }
+
+  /** The endpoint to post to, falling back to the global one, with build variables expanded. */
+  String getExpandedEndpoint(EnvVars env) {
 	  String endpoint = this.getEndpoint().getPlainText();
     if (StringUtils.isEmpty(endpoint)) {
-		endpoint = getDescriptor().getEndpoint().getPlainText();
-    }
-    String room = this.room;
-    if (StringUtils.isEmpty(room)) {
-      room = getDescriptor().getRoom();
+		endpoint = GlobalSettings.current().getEndpoint();
     }
+    return env.expand(endpoint);
+  }
 
+  /** The channels to notify, falling back to the global ones, as configured. */
+  String getConfiguredRoom() {
+    return StringUtils.isEmpty(room) ? GlobalSettings.current().getRoom() : room;
+  }
+
+  /** The channels to notify, falling back to the global ones, with build variables expanded. */
+  String getExpandedRoom(EnvVars env) {
+    return env.expand(getConfiguredRoom());
+  }
+
+  /** The icon to post with, falling back to the global one, with build variables expanded. */
+  String getExpandedIcon(EnvVars env) {
     String icon = this.icon;
     if (StringUtils.isEmpty(icon)) {
-      icon = getDescriptor().getIcon();
-    }
-
-    EnvVars env = null;
-    try {
-      env = r.getEnvironment(listener);
-    } catch (Exception e) {
-      listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
-      env = new EnvVars();
+      icon = GlobalSettings.current().getIcon();
     }
-    endpoint = env.expand(endpoint);
-    room = env.expand(room);
-    icon = env.expand(icon);
-
-    return new StandardMattermostService(endpoint, room, icon);
+    return env.expand(icon);
   }
 
   @Override
   public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
       throws InterruptedException, IOException {
     logger.info("Performing complete notifications");
-    new ActiveNotifier(this, listener, new JenkinsTokenExpander(listener)).completed(build);
+    NotificationDispatcher.get().completed(this, build, listener);
     return true;
   }
 
@@ -412,7 +462,7 @@ public class MattermostNotifier extends Notifier {
   public boolean prebuild(AbstractBuild<?, ?> build, BuildListener listener) {
     if (startNotification) {
       logger.info("Performing start notifications");
-      new ActiveNotifier((MattermostNotifier) this, listener, new JenkinsTokenExpander(listener)).started(build);
+      NotificationDispatcher.get().started(this, build, listener);
     }
     return super.prebuild(build, listener);
   }
@@ -433,10 +483,46 @@ public class MattermostNotifier extends Notifier {
     private String proxyUsername;
     private Secret proxyPassword;
 
+    private boolean queueNotifications;
+    private int retryMaxAttempts = RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+    private long retryBaseDelayMillis = RetryPolicy.DEFAULT_BASE_DELAY_MILLIS;
+    private long retryMaxDelayMillis = RetryPolicy.DEFAULT_MAX_DELAY_MILLIS;
+    private int rateLimitPerSecond = RateLimiter.DEFAULT_RATE_PER_SECOND;
+    private int rateLimitBurst = RateLimiter.DEFAULT_BURST;
+    private int channelRateLimitPerMinute = RateLimiter.DEFAULT_CHANNEL_RATE_PER_MINUTE;
+    private long coalescingWindowMillis;
+    private boolean combineCommitList;
+
+    private transient volatile GlobalSettings settings;
+
     public DescriptorImpl() {
       load();
     }
 
+    @Override
+    public synchronized void load() {
+      super.load();
+      applySettings();
+    }
+
+    /** The current configuration, with its secrets decrypted. */
+    public final GlobalSettings getSettings() {
+      GlobalSettings current = settings;
+      return current != null ? current : GlobalSettings.of(this);
+    }
+
+    /**
+     * Puts the configuration into effect as a whole, once it has been loaded or bound: configures
+     * the rate limiter and publishes a new settings snapshot. The setters only change fields, so
+     * notifications never see a mix of old and new settings.
+     */
+    void applySettings() {
+      RateLimiter.get().configure(rateLimitPerSecond, rateLimitBurst, channelRateLimitPerMinute);
+      GlobalSettings current = GlobalSettings.of(this);
+      settings = current;
+      GlobalSettings.publish(current);
+    }
+
     public boolean isUseCustomProxy() { return useCustomProxy; }
 
     public String getProxyServer(){
@@ -456,7 +542,9 @@ public class MattermostNotifier extends Notifier {
     }
 
     @DataBoundSetter
-    public void setUseCustomProxy(boolean useCustomProxy) { this.useCustomProxy = useCustomProxy; }
+    public void setUseCustomProxy(boolean useCustomProxy) {
+      this.useCustomProxy = useCustomProxy;
+    }
 
     @DataBoundSetter
     public void setProxyServer(String proxyServer) {
@@ -540,10 +628,121 @@ public class MattermostNotifier extends Notifier {
       }
     }
 
+    /** The configured URL, without falling back to the Jenkins location. */
+    String getConfiguredBuildServerUrl() {
+      return buildServerUrl;
+    }
+
     public String getSendAs() {
       return sendAs;
     }
 
+    public boolean isQueueNotifications() {
+      return queueNotifications;
+    }
+
+    @DataBoundSetter
+    public void setQueueNotifications(boolean queueNotifications) {
+      this.queueNotifications = queueNotifications;
+    }
+
+    public int getRetryMaxAttempts() {
+      return retryMaxAttempts;
+    }
+
+    @DataBoundSetter
+    public void setRetryMaxAttempts(int retryMaxAttempts) {
+      this.retryMaxAttempts = retryMaxAttempts;
+    }
+
+    public long getRetryBaseDelayMillis() {
+      return retryBaseDelayMillis;
+    }
+
+    @DataBoundSetter
+    public void setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+      this.retryBaseDelayMillis = retryBaseDelayMillis;
+    }
+
+    public long getRetryMaxDelayMillis() {
+      return retryMaxDelayMillis;
+    }
+
+    @DataBoundSetter
+    public void setRetryMaxDelayMillis(long retryMaxDelayMillis) {
+      this.retryMaxDelayMillis = retryMaxDelayMillis;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+      return new RetryPolicy(retryMaxAttempts, retryBaseDelayMillis, retryMaxDelayMillis);
+    }
+
+    public int getRateLimitPerSecond() {
+      return rateLimitPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setRateLimitPerSecond(int rateLimitPerSecond) {
+      this.rateLimitPerSecond = rateLimitPerSecond;
+    }
+
+    public int getRateLimitBurst() {
+      return rateLimitBurst;
+    }
+
+    @DataBoundSetter
+    public void setRateLimitBurst(int rateLimitBurst) {
+      this.rateLimitBurst = rateLimitBurst;
+    }
+
+    public int getChannelRateLimitPerMinute() {
+      return channelRateLimitPerMinute;
+    }
+
+    @DataBoundSetter
+    public void setChannelRateLimitPerMinute(int channelRateLimitPerMinute) {
+      this.channelRateLimitPerMinute = channelRateLimitPerMinute;
+    }
+
+    /** How long messages to a channel are collected into one post; 0 posts every message at once. */
+    public long getCoalescingWindowMillis() {
+      return coalescingWindowMillis;
+    }
+
+    @DataBoundSetter
+    public void setCoalescingWindowMillis(long coalescingWindowMillis) {
+      this.coalescingWindowMillis = coalescingWindowMillis;
+    }
+
+    public boolean isCombineCommitList() {
+      return combineCommitList;
+    }
+
+    @DataBoundSetter
+    public void setCombineCommitList(boolean combineCommitList) {
+      this.combineCommitList = combineCommitList;
+    }
+
+    public RateLimiter getRateLimiter() {
+      return RateLimiter.get();
+    }
+
+    public Collection<CircuitBreaker> getCircuitBreakers() {
+      return CircuitBreaker.all();
+    }
+
+    public NotificationDispatcher getNotificationDispatcher() {
+      return NotificationDispatcher.get();
+    }
+
+    public StormDetector getStormDetector() {
+      return StormDetector.get();
+    }
+
+    public OutboundQueue getOutboundQueue() {
+      return OutboundQueue.get();
+    }
+
     public ListBoxModel doFillCommitInfoChoiceItems() {
       ListBoxModel model = new ListBoxModel();
       for (CommitInfoChoice choice : CommitInfoChoice.values()) {
@@ -559,13 +758,14 @@ public class MattermostNotifier extends Notifier {
     @Override
     public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
       req.bindJSON(this, formData);
+      applySettings();
       save();
       return true;
     }
 
     MattermostService getMattermostService(
         final String endpoint, final String room, final String icon) {
-      return new StandardMattermostService(endpoint, room, icon);
+      return StandardMattermostService.get(endpoint, room, icon);
     }
 
     @Override
@@ -1,9 +1,53 @@
 package jenkins.plugins.mattermost;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface MattermostService {
   boolean publish(String message);
 
   boolean publish(String message, String color);
 
   boolean publish(String message, String text, String color);
+
+  /**
+   * Posts the message without holding the calling thread for the HTTP round trip. The returned
+   * future never completes exceptionally; failures are reported through the {@link PublishResult}.
+   * Implementations without native support fall back to the blocking {@link #publish(String,
+   * String, String)}.
+   */
+  default CompletableFuture<PublishResult> publishAsync(String message, String text, String color) {
+    boolean success = publish(message, text, color);
+    return CompletableFuture.completedFuture(
+        success
+            ? PublishResult.of("", 200, 0)
+            : PublishResult.failure("", PublishResult.NO_RESPONSE, 0, null));
+  }
+
+  default CompletableFuture<PublishResult> publishAsync(String message, String color) {
+    return publishAsync(message, "", color);
+  }
+
+  /**
+   * Posts the messages in order, as the attachments of a single post where supported, with the text
+   * shown once above them. Implementations without native support post them one after another.
+   */
+  default CompletableFuture<PublishResult> publishAsync(
+      List<String> messages, String text, String color) {
+    CompletableFuture<List<PublishResult>> results =
+        CompletableFuture.completedFuture(new ArrayList<>());
+    for (String message : messages) {
+      results =
+          results.thenCompose(
+              done ->
+                  publishAsync(message, text, color)
+                      .thenApply(
+                          result -> {
+                            done.add(result);
+                            return done;
+                          }));
+    }
+    return results.thenApply(PublishResult::ofSequence);
+  }
 }
@@ -0,0 +1,161 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Buffers the messages to each channel for a short window and posts them together, one attachment
+ * per message. A burst of builds completing at once then results in a few posts instead of one per
+ * build. A batch is posted early once it reaches Mattermost's attachment or post size limits.
+ */
+public class MessageCoalescer {
+
+  static final int MAX_ATTACHMENTS =
+      SystemProperties.getInteger(MessageCoalescer.class.getName() + ".maxAttachments", 20);
+
+  private static final MessageCoalescer instance = new MessageCoalescer();
+
+  /** Batches still open for more messages. Guarded by {@code this}. */
+  private final Map<Key, Batch> batches = new HashMap<>();
+
+  private final int maxAttachments;
+  private final int maxPostSize;
+
+  MessageCoalescer(int maxAttachments, int maxPostSize) {
+    this.maxAttachments = Math.max(1, maxAttachments);
+    this.maxPostSize = maxPostSize;
+  }
+
+  private MessageCoalescer() {
+    this(MAX_ATTACHMENTS, Attachment.MAX_POST_SIZE);
+  }
+
+  public static MessageCoalescer get() {
+    return instance;
+  }
+
+  /**
+   * Adds the message to the batch of every channel of the given channel spec. The returned future
+   * completes once all of those batches have been posted.
+   */
+  CompletableFuture<PublishResult> submit(
+      String endpoint,
+      String channels,
+      String icon,
+      Attachment attachment,
+      long windowMillis) {
+    List<CompletableFuture<PublishResult>> futures = new ArrayList<>();
+    for (String channel : channels.split("[,;]+")) {
+      futures.add(add(new Key(endpoint, channel.trim(), icon), attachment, windowMillis));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            ignored ->
+                PublishResult.of(
+                    futures.stream().map(CompletableFuture::join).collect(Collectors.toList())));
+  }
+
+  private CompletableFuture<PublishResult> add(Key key, Attachment attachment, long windowMillis) {
+    Batch full = null;
+    CompletableFuture<PublishResult> result;
+    synchronized (this) {
+      Batch batch = batches.get(key);
+      if (batch != null && !batch.fits(attachment)) {
+        batches.remove(key);
+        full = batch;
+        batch = null;
+      }
+      if (batch == null) {
+        Batch created = new Batch(key);
+        batches.put(key, created);
+        Timer.get().schedule(() -> flush(created), windowMillis, TimeUnit.MILLISECONDS);
+        batch = created;
+      }
+      batch.attachments.add(attachment);
+      batch.size += attachment.estimatedSize();
+      result = batch.posted;
+    }
+    if (full != null) {
+      post(full);
+    }
+    return result;
+  }
+
+  /** Posts the batch unless it was already posted because it was full. */
+  private void flush(Batch batch) {
+    synchronized (this) {
+      if (batches.get(batch.key) != batch) {
+        return;
+      }
+      batches.remove(batch.key);
+    }
+    post(batch);
+  }
+
+  void post(Batch batch) {
+    StandardMattermostService.get(batch.key.endpoint, batch.key.channel, batch.key.icon)
+        .publishAsync(batch.attachments)
+        .whenComplete(
+            (result, e) ->
+                batch.posted.complete(
+                    e == null
+                        ? result
+                        : PublishResult.failure(batch.key.channel, PublishResult.NO_RESPONSE, 0, e)));
+  }
+
+  /** Number of channels with messages waiting for their window to close. */
+  public synchronized int getOpenBatches() {
+    return batches.size();
+  }
+
+  final class Batch {
+    final Key key;
+    final List<Attachment> attachments = new ArrayList<>();
+    final CompletableFuture<PublishResult> posted = new CompletableFuture<>();
+    int size;
+
+    Batch(Key key) {
+      this.key = key;
+    }
+
+    boolean fits(Attachment attachment) {
+      return attachments.size() < maxAttachments && size + attachment.estimatedSize() <= maxPostSize;
+    }
+  }
+
+  private static final class Key {
+    private final String endpoint;
+    private final String channel;
+    private final String icon;
+
+    Key(String endpoint, String channel, String icon) {
+      this.endpoint = endpoint;
+      this.channel = channel;
+      this.icon = icon;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return endpoint.equals(other.endpoint)
+          && channel.equals(other.channel)
+          && Objects.equals(icon, other.icon);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(endpoint, channel, icon);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package jenkins.plugins.mattermost;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.CheckForNull;
+
+/**
+ * A custom message, parsed once into literal text and {@code $NAME} or {@code ${NAME}} variables.
+ * A message without variables is posted as is, variables of the build environment are filled in
+ * directly and token macros are only evaluated when a variable is not in the environment. Messages
+ * using other syntax, such as macro arguments or {@code $$}, are expanded as a whole.
+ */
+final class MessageTemplate {
+
+  private final String source;
+  /** Literal text at even indices and variables as written at odd ones, or {@code null}. */
+  private final @CheckForNull List<String> segments;
+
+  private MessageTemplate(String source, @CheckForNull List<String> segments) {
+    this.source = source;
+    this.segments = segments;
+  }
+
+  static MessageTemplate compile(@CheckForNull String source) {
+    if (source == null) {
+      source = "";
+    }
+    if (source.indexOf('$') < 0) {
+      return new MessageTemplate(source, Collections.singletonList(source));
+    }
+    List<String> segments = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+    while (i < source.length()) {
+      char c = source.charAt(i);
+      if (c != '$') {
+        literal.append(c);
+        i++;
+        continue;
+      }
+      int start = i + 1;
+      boolean braced = start < source.length() && source.charAt(start) == '{';
+      if (braced) {
+        start++;
+      }
+      int end = start;
+      while (end < source.length() && isNameChar(source.charAt(end), braced)) {
+        end++;
+      }
+      if (end == start || braced && (end == source.length() || source.charAt(end) != '}')) {
+        return new MessageTemplate(source, null);
+      }
+      segments.add(literal.toString());
+      i = braced ? end + 1 : end;
+      segments.add(source.substring(start - (braced ? 2 : 1), i));
+      literal.setLength(0);
+    }
+    segments.add(literal.toString());
+    return new MessageTemplate(source, segments);
+  }
+
+  private static boolean isNameChar(char c, boolean braced) {
+    return c >= 'A' && c <= 'Z'
+        || c >= 'a' && c <= 'z'
+        || c >= '0' && c <= '9'
+        || c == '_'
+        || braced && c == '.';
+  }
+
+  private static String name(String variable) {
+    return variable.charAt(1) == '{'
+        ? variable.substring(2, variable.length() - 1)
+        : variable.substring(1);
+  }
+
+  String getSource() {
+    return source;
+  }
+
+  /** Whether the message has no variables, so it is posted as written. */
+  boolean isLiteral() {
+    return segments != null && segments.size() == 1;
+  }
+
+  /**
+   * The message with the variables of the environment filled in, then the remaining ones expanded
+   * as token macros if {@code macros} is given.
+   */
+  String expand(EnvVars environment, @CheckForNull TokenExpander macros, AbstractBuild<?, ?> build) {
+    if (isLiteral()) {
+      return source;
+    }
+    if (segments == null) {
+      String expanded = environment.expand(source);
+      return macros != null ? macros.expand(expanded, build) : expanded;
+    }
+    StringBuilder expanded = new StringBuilder(source.length());
+    boolean unresolved = false;
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+      if (i % 2 == 0) {
+        expanded.append(segment);
+        continue;
+      }
+      String value = environment.get(name(segment));
+      if (value != null) {
+        expanded.append(value);
+      } else {
+        expanded.append(segment);
+        unresolved = true;
+      }
+    }
+    return unresolved && macros != null
+        ? macros.expand(expanded.toString(), build)
+        : expanded.toString();
+  }
+}
@@ -0,0 +1,133 @@
+package jenkins.plugins.mattermost;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.SEVERE;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import java.io.IOException;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * What the messages for one event of a build share: the build environment, the endpoint, channels
+ * and icon expanded with it, and the service posting to them. Each is computed at most once, since
+ * computing the environment runs every environment contributor.
+ */
+@SuppressWarnings("rawtypes")
+final class NotificationContext {
+
+  private static final Logger logger = Logger.getLogger(NotificationContext.class.getName());
+
+  private final MattermostNotifier notifier;
+  private final AbstractBuild build;
+  /** The build log, or {@code null} once the build thread has been left. */
+  private final @CheckForNull TaskListener listener;
+  private final @CheckForNull Result result;
+
+  private EnvVars environment;
+  private String endpoint;
+  private String room;
+  private String icon;
+  private MattermostService service;
+
+  /** A context that reads the environment and the result of the build when they are needed. */
+  NotificationContext(
+      MattermostNotifier notifier, AbstractBuild build, @CheckForNull TaskListener listener) {
+    this(notifier, build, listener, null);
+  }
+
+  private NotificationContext(
+      MattermostNotifier notifier,
+      AbstractBuild build,
+      @CheckForNull TaskListener listener,
+      @CheckForNull Result result) {
+    this.notifier = notifier;
+    this.build = build;
+    this.listener = listener;
+    this.result = result;
+  }
+
+  /**
+   * Captures the environment and the result of the build on the build thread, so the context can
+   * be used after handing off without the build log.
+   */
+  static NotificationContext capture(
+      MattermostNotifier notifier, AbstractBuild build, TaskListener listener) {
+    NotificationContext context =
+        new NotificationContext(notifier, build, null, build.getResult());
+    context.environment = environment(build, listener);
+    return context;
+  }
+
+  AbstractBuild getBuild() {
+    return build;
+  }
+
+  MattermostNotifier getNotifier() {
+    return notifier;
+  }
+
+  /** The result the notification is about, which may be captured before the build completed. */
+  Result getResult() {
+    return result != null ? result : build.getResult();
+  }
+
+  EnvVars getEnvironment() {
+    if (environment == null) {
+      environment = environment(build, listener);
+    }
+    return environment;
+  }
+
+  private static EnvVars environment(AbstractBuild build, @CheckForNull TaskListener listener) {
+    try {
+      return build.getEnvironment(listener != null ? listener : new LogTaskListener(logger, INFO));
+    } catch (IOException | InterruptedException e) {
+      if (listener != null) {
+        listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
+      } else {
+        logger.log(SEVERE, e.getMessage(), e);
+      }
+      return new EnvVars();
+    }
+  }
+
+  String getEndpoint() {
+    if (endpoint == null) {
+      endpoint = notifier.getExpandedEndpoint(getEnvironment());
+    }
+    return endpoint;
+  }
+
+  /** The channels to notify, with build variables expanded. */
+  String getRoom() {
+    if (room == null) {
+      room = notifier.getExpandedRoom(getEnvironment());
+    }
+    return room;
+  }
+
+  /** Notifies the given channels instead of the configured ones. */
+  void setRoom(String room) {
+    this.room = room;
+    this.service = null;
+  }
+
+  String getIcon() {
+    if (icon == null) {
+      icon = notifier.getExpandedIcon(getEnvironment());
+    }
+    return icon;
+  }
+
+  MattermostService getService() {
+    if (service == null) {
+      service = MattermostNotifier.newMattermostService(getEndpoint(), getRoom(), getIcon());
+    }
+    return service;
+  }
+}
@@ -0,0 +1,72 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import jenkins.util.SystemProperties;
+
+/**
+ * Remembers which build events were already sent to which channels, so that a build notified both
+ * by the publisher and by the run listener results in one post per channel. Only the most recent
+ * events are remembered, which is enough since both hooks fire within moments of each other.
+ */
+final class NotificationDeduplicator {
+
+  static final int CAPACITY =
+      SystemProperties.getInteger(NotificationDeduplicator.class.getName() + ".capacity", 1000);
+
+  private static final NotificationDeduplicator instance = new NotificationDeduplicator(CAPACITY);
+
+  /** Events sent, keyed by job, build number, event and channel. Guarded by {@code this}. */
+  private final Map<List<Object>, Boolean> sent;
+
+  private long duplicates;
+
+  NotificationDeduplicator(int capacity) {
+    int maxSize = Math.max(1, capacity);
+    sent =
+        new LinkedHashMap<List<Object>, Boolean>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<List<Object>, Boolean> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  static NotificationDeduplicator get() {
+    return instance;
+  }
+
+  /**
+   * Claims the event for each channel of the given channel spec, and returns the spec of those
+   * channels it had not been claimed for yet, or {@code null} if it was sent to all of them already.
+   */
+  @CheckForNull
+  synchronized String claim(String job, int build, String event, String channels) {
+    List<String> unclaimed = new ArrayList<>();
+    for (String channel : channels.split("[,;]+")) {
+      String trimmed = channel.trim();
+      if (sent.put(Arrays.asList(job, build, event, trimmed), Boolean.TRUE) == null) {
+        unclaimed.add(trimmed);
+      } else {
+        duplicates++;
+      }
+    }
+    return unclaimed.isEmpty() ? null : String.join(",", unclaimed);
+  }
+
+  /** Forgets that the event was claimed for the given channels, so it can be sent again. */
+  synchronized void release(String job, int build, String event, String channels) {
+    for (String channel : channels.split("[,;]+")) {
+      sent.remove(Arrays.asList(job, build, event, channel.trim()));
+    }
+  }
+
+  /** Number of posts skipped because their event had been sent to the channel already. */
+  synchronized long getDuplicateCount() {
+    return duplicates;
+  }
+}
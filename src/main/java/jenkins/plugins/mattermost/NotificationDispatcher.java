@@ -0,0 +1,188 @@
+package jenkins.plugins.mattermost;
+
+import static hudson.Util.fixNull;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+
+/**
+ * Sends the notifications of freestyle builds off the build's executor, so that a slow Mattermost
+ * neither delays the start of a build nor keeps its executor busy once it is done. What can only be
+ * read on the build thread, such as the environment and the result at that point, is captured
+ * before handing off. The notifications of one job are sent in the order they were handed off, and
+ * an event that both the publisher and the run listener report is only sent once per channel.
+ */
+public final class NotificationDispatcher {
+
+  private static final Logger logger = Logger.getLogger(NotificationDispatcher.class.getName());
+
+  private static final NotificationDispatcher instance = new NotificationDispatcher();
+
+  static final String STARTED = "started";
+  static final String COMPLETED = "completed";
+
+  /** Notifications waiting to be sent, per job. Guarded by {@code this}. */
+  private final Map<String, Lane> lanes = new HashMap<>();
+
+  NotificationDispatcher() {}
+
+  public static NotificationDispatcher get() {
+    return instance;
+  }
+
+  /** Hands the start notification of the build off, unless it was handed off already. */
+  @SuppressWarnings("rawtypes")
+  public void started(MattermostNotifier notifier, AbstractBuild build, TaskListener listener) {
+    send(notifier, build, listener, STARTED);
+  }
+
+  /** Hands the completion notification of the build off, unless it was handed off already. */
+  @SuppressWarnings("rawtypes")
+  public void completed(MattermostNotifier notifier, AbstractBuild build, TaskListener listener) {
+    send(notifier, build, listener, COMPLETED);
+  }
+
+  /**
+   * Claims the event for the notifier's channels as configured, before anything is computed for
+   * it, then captures what has to be read on the build thread and hands the notification off. The
+   * claim is released for the channels the notification could not be sent to, so a later report
+   * of the same event can try them again.
+   */
+  @SuppressWarnings("rawtypes")
+  private void send(
+      MattermostNotifier notifier, AbstractBuild build, TaskListener listener, String event) {
+    String job = build.getParent().getFullName();
+    int number = build.getNumber();
+    String channels =
+        NotificationDeduplicator.get()
+            .claim(job, number, event, fixNull(notifier.getConfiguredRoom()));
+    if (channels == null) {
+      logger.fine("Mattermost " + event + " notification of " + build + " was sent already");
+      return;
+    }
+    NotificationContext context = NotificationContext.capture(notifier, build, listener);
+    EnvVars env = context.getEnvironment();
+    context.setRoom(env.expand(channels));
+    TaskListener log = new LogTaskListener(logger, Level.INFO);
+    ActiveNotifier active = new ActiveNotifier(context, new JenkinsTokenExpander(log));
+    dispatch(
+        job,
+        () -> {
+          CompletableFuture<PublishResult> published;
+          try {
+            published =
+                event.equals(STARTED)
+                    ? active.publishStarted(build)
+                    : active.publishCompleted(build);
+          } catch (RuntimeException e) {
+            NotificationDeduplicator.get().release(job, number, event, channels);
+            throw e;
+          }
+          published.thenAccept(
+              result -> {
+                String failed = result != null ? failedChannels(channels, result, env) : null;
+                if (failed != null) {
+                  NotificationDeduplicator.get().release(job, number, event, failed);
+                }
+              });
+        });
+  }
+
+  /**
+   * The claimed channels that expand to a channel the notification failed to reach, or {@code
+   * null} if it reached all of them. A result that names no single channel fails all it names.
+   */
+  @CheckForNull
+  static String failedChannels(String channels, PublishResult result, EnvVars env) {
+    Set<String> failed = new HashSet<>();
+    for (PublishResult channelResult : result.getChannelResults()) {
+      if (!channelResult.isSuccess()) {
+        for (String channel : channelResult.getChannel().split("[,;]+")) {
+          failed.add(channel.trim());
+        }
+      }
+    }
+    List<String> release = new ArrayList<>();
+    for (String channel : channels.split("[,;]+")) {
+      for (String expanded : env.expand(channel).split("[,;]+")) {
+        if (failed.contains(expanded.trim())) {
+          release.add(channel);
+          break;
+        }
+      }
+    }
+    return release.isEmpty() ? null : String.join(",", release);
+  }
+
+  /** Runs the task after the ones previously dispatched for the same job. */
+  void dispatch(String job, Runnable task) {
+    Lane lane;
+    synchronized (this) {
+      lane = lanes.computeIfAbsent(job, Lane::new);
+      lane.tasks.add(task);
+      if (lane.scheduled) {
+        return;
+      }
+      lane.scheduled = true;
+    }
+    try {
+      MattermostExecutors.dispatcher().execute(() -> drain(lane));
+    } catch (RejectedExecutionException e) {
+      // saturated or shutting down: this lane is ours to drain, so the order is kept
+      drain(lane);
+    }
+  }
+
+  private void drain(Lane lane) {
+    while (true) {
+      Runnable task;
+      synchronized (this) {
+        task = lane.tasks.poll();
+        if (task == null) {
+          lane.scheduled = false;
+          lanes.remove(lane.job);
+          return;
+        }
+      }
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Mattermost notification for " + lane.job + " failed", e);
+      }
+    }
+  }
+
+  /** Number of notifications handed off but not sent yet. */
+  public synchronized int getPendingCount() {
+    int pending = 0;
+    for (Lane lane : lanes.values()) {
+      pending += lane.tasks.size();
+    }
+    return pending;
+  }
+
+  private static final class Lane {
+    private final String job;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private boolean scheduled;
+
+    Lane(String job) {
+      this.job = job;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package jenkins.plugins.mattermost;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal backing the {@link OutboundQueue}. Every enqueued message is written as a
+ * {@code +} record and every delivered or discarded one as a {@code -} record, so replaying the file
+ * after a restart yields exactly the messages that were still pending. The file is rewritten with
+ * only the pending messages once enough acknowledgements have accumulated.
+ *
+ * <p>Enqueued messages are synced to the disk before {@link #append} returns, so they survive a
+ * crash of the host. Acknowledgements are only flushed: one lost in a crash makes its message be
+ * delivered again, which is preferred to syncing after every post.
+ */
+final class NotificationJournal {
+
+  private static final Logger logger = Logger.getLogger(NotificationJournal.class.getName());
+
+  static final int COMPACT_THRESHOLD = 1000;
+
+  private final File file;
+  private FileOutputStream stream;
+  private Writer writer;
+  private int acknowledgements;
+
+  NotificationJournal(File file) {
+    this.file = file;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /** Reads the journal and returns the pending messages in the order they were enqueued. */
+  List<OutboundMessage> replay() throws IOException {
+    Map<Long, OutboundMessage> pending = new LinkedHashMap<>();
+    if (!file.exists()) {
+      return new ArrayList<>();
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        try {
+          if (line.charAt(0) == '+') {
+            OutboundMessage message = OutboundMessage.fromJson(line.substring(1));
+            pending.put(message.getId(), message);
+          } else if (line.charAt(0) == '-') {
+            pending.remove(Long.parseLong(line.substring(1)));
+            acknowledgements++;
+          }
+        } catch (RuntimeException e) {
+          // most likely the last record was torn by a crash while it was being written
+          logger.log(Level.WARNING, "Skipping unreadable record in " + file, e);
+        }
+      }
+    }
+    return new ArrayList<>(pending.values());
+  }
+
+  void append(OutboundMessage message) throws IOException {
+    append(Collections.singletonList(message));
+  }
+
+  /** Appends the messages with a single write and syncs them to the disk. */
+  void append(Collection<OutboundMessage> messages) throws IOException {
+    StringBuilder records = new StringBuilder();
+    for (OutboundMessage message : messages) {
+      records.append('+').append(message.toJson()).append('\n');
+    }
+    Writer out = writer();
+    out.write(records.toString());
+    out.flush();
+    stream.getFD().sync();
+  }
+
+  /**
+   * Records that a message left the queue. Returns {@code true} when the journal has accumulated
+   * enough acknowledgements to be worth compacting.
+   */
+  boolean acknowledge(long id) throws IOException {
+    Writer out = writer();
+    out.write('-');
+    out.write(Long.toString(id));
+    out.write('\n');
+    out.flush();
+    return ++acknowledgements >= COMPACT_THRESHOLD;
+  }
+
+  /** Replaces the journal with one containing only the given pending messages. */
+  void compact(Collection<OutboundMessage> pending) throws IOException {
+    close();
+    if (pending.isEmpty()) {
+      Files.deleteIfExists(file.toPath());
+    } else {
+      File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+      FileOutputStream tmpStream = open(tmp, false);
+      try (Writer out = writer(tmpStream)) {
+        for (OutboundMessage message : pending) {
+          out.write('+');
+          out.write(message.toJson());
+          out.write('\n');
+        }
+        out.flush();
+        // the pending messages must be on the disk before they replace the journal
+        tmpStream.getFD().sync();
+      }
+      Files.move(
+          tmp.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    acknowledgements = 0;
+  }
+
+  void close() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        logger.log(Level.FINE, "Error closing " + file, e);
+      }
+      writer = null;
+      stream = null;
+    }
+  }
+
+  private Writer writer() throws IOException {
+    if (writer == null) {
+      stream = open(file, true);
+      writer = writer(stream);
+    }
+    return writer;
+  }
+
+  private static FileOutputStream open(File file, boolean append) throws IOException {
+    File parent = file.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create " + parent);
+    }
+    return new FileOutputStream(file, append);
+  }
+
+  private static Writer writer(FileOutputStream stream) {
+    return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+  }
+}
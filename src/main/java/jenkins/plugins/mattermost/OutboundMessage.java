@@ -0,0 +1,136 @@
+package jenkins.plugins.mattermost;
+
+import hudson.util.Secret;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A message waiting in the {@link OutboundQueue} to be posted to a single channel, with one
+ * attachment or several that are posted together.
+ */
+public final class OutboundMessage {
+
+  private final long id;
+  private final long enqueuedAt;
+  private final String endpoint;
+  private final String channel;
+  private final String icon;
+  private final List<String> messages;
+  private final String text;
+  private final String color;
+
+  OutboundMessage(
+      long id,
+      long enqueuedAt,
+      String endpoint,
+      String channel,
+      String icon,
+      String message,
+      String text,
+      String color) {
+    this(id, enqueuedAt, endpoint, channel, icon, Collections.singletonList(message), text, color);
+  }
+
+  OutboundMessage(
+      long id,
+      long enqueuedAt,
+      String endpoint,
+      String channel,
+      String icon,
+      List<String> messages,
+      String text,
+      String color) {
+    this.id = id;
+    this.enqueuedAt = enqueuedAt;
+    this.endpoint = endpoint;
+    this.channel = channel;
+    this.icon = icon;
+    this.messages = Collections.unmodifiableList(new ArrayList<>(messages));
+    this.text = text;
+    this.color = color;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public long getEnqueuedAt() {
+    return enqueuedAt;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  public String getIcon() {
+    return icon;
+  }
+
+  /** The first attachment. */
+  public String getMessage() {
+    return messages.get(0);
+  }
+
+  /** The attachments, in the order they are posted. */
+  public List<String> getMessages() {
+    return messages;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public String getColor() {
+    return color;
+  }
+
+  /**
+   * Journal representation; the endpoint contains the webhook key and is stored encrypted. Further
+   * attachments are only written when there are any, so journals of single messages stay as they
+   * were.
+   */
+  String toJson() {
+    JSONObject object =
+        new JSONObject()
+            .put("id", id)
+            .put("enqueuedAt", enqueuedAt)
+            .put("endpoint", Secret.fromString(endpoint).getEncryptedValue())
+            .put("channel", channel)
+            .put("icon", icon)
+            .put("message", messages.get(0))
+            .put("text", text)
+            .put("color", color);
+    if (messages.size() > 1) {
+      object.put("more", new JSONArray(messages.subList(1, messages.size())));
+    }
+    return object.toString();
+  }
+
+  static OutboundMessage fromJson(String json) {
+    JSONObject object = new JSONObject(json);
+    List<String> messages = new ArrayList<>();
+    messages.add(object.optString("message", ""));
+    JSONArray more = object.optJSONArray("more");
+    if (more != null) {
+      for (int i = 0; i < more.length(); i++) {
+        messages.add(more.getString(i));
+      }
+    }
+    return new OutboundMessage(
+        object.getLong("id"),
+        object.getLong("enqueuedAt"),
+        Secret.toString(Secret.fromString(object.optString("endpoint", ""))),
+        object.optString("channel", ""),
+        object.optString("icon", ""),
+        messages,
+        object.optString("text", ""),
+        object.optString("color", ""));
+  }
+}
@@ -0,0 +1,434 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Durable queue of outbound notifications. Messages are appended to a journal under {@code
+ * JENKINS_HOME} and posted by a background dispatcher thread, so builds never wait for Mattermost,
+ * and messages that could not be delivered while Mattermost was unreachable survive a controller
+ * restart. Each endpoint has its own lane, delivered in order with at most one post in flight, so
+ * an unreachable server only delays its own messages. The lanes waiting for their next post are
+ * ordered by when it is due, so picking the next message does not look at the whole backlog.
+ */
+public final class OutboundQueue {
+
+  private static final Logger logger = Logger.getLogger(OutboundQueue.class.getName());
+
+  static final int MAX_DEPTH =
+      SystemProperties.getInteger(OutboundQueue.class.getName() + ".maxDepth", 10000);
+
+  static final long MAX_AGE_MILLIS =
+      TimeUnit.HOURS.toMillis(
+          SystemProperties.getLong(OutboundQueue.class.getName() + ".maxAgeHours", 24L));
+
+  private static final long DRAIN_RATE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** How long {@link #stop} waits for the posts in flight to be acknowledged. */
+  private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private static OutboundQueue instance;
+
+  private final NotificationJournal journal;
+  /** The lanes with pending messages, by endpoint. Guarded by {@code this}. */
+  private final Map<String, Lane> lanes = new HashMap<>();
+  /**
+   * The lanes without a post in flight, by when their first message is due. Guarded by {@code
+   * this}.
+   */
+  private final PriorityQueue<Lane> idleLanes =
+      new PriorityQueue<>(Comparator.comparingLong(Lane::due));
+  /** Completion times of the deliveries in the last minute. Guarded by {@code this}. */
+  private final Deque<Long> deliveries = new ArrayDeque<>();
+
+  /** Number of pending messages. Guarded by {@code this}. */
+  private int depth;
+  /** Number of lanes with a post in flight. Guarded by {@code this}. */
+  private int inFlight;
+
+  private long nextId = 1;
+  private Thread dispatcher;
+  private volatile boolean stopped;
+  /** Set once the journal is closed; late acknowledgements are then ignored. */
+  private boolean closed;
+
+  OutboundQueue(NotificationJournal journal) {
+    this.journal = journal;
+  }
+
+  static synchronized OutboundQueue get() {
+    if (instance == null) {
+      OutboundQueue queue = new OutboundQueue(new NotificationJournal(journalFile()));
+      queue.load();
+      instance = queue;
+    }
+    return instance;
+  }
+
+  /** Whether notifications should go through the queue, as configured globally. */
+  public static boolean isEnabled() {
+    return GlobalSettings.current().isQueueNotifications();
+  }
+
+  private static File journalFile() {
+    return new File(new File(Jenkins.get().getRootDir(), "mattermost"), "outbound-queue.journal");
+  }
+
+  /** Resumes delivery of messages that were still pending when Jenkins was stopped. */
+  @Initializer(after = InitMilestone.JOB_LOADED)
+  public static void resume() {
+    if (journalFile().exists()) {
+      OutboundQueue queue = get();
+      int depth = queue.getDepth();
+      if (depth > 0) {
+        logger.info("Resuming delivery of " + depth + " queued Mattermost notification(s)");
+        queue.start();
+      }
+    }
+  }
+
+  @Terminator(requires = MattermostExecutors.NOTIFICATIONS_DRAINED)
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  private synchronized void load() {
+    try {
+      for (OutboundMessage message : journal.replay()) {
+        add(new Entry(message));
+        nextId = Math.max(nextId, message.getId() + 1);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not read " + journal.getFile(), e);
+    }
+  }
+
+  /**
+   * Queues one message per channel of the given channel spec. Returns {@code false} if the messages
+   * could not be persisted or the queue is full.
+   */
+  public boolean enqueue(
+      String endpoint, String channels, String icon, String message, String text, String color) {
+    return enqueue(endpoint, channels, icon, Collections.singletonList(message), text, color);
+  }
+
+  /**
+   * Queues one message per channel of the given channel spec, with the given attachments posted
+   * together. Returns {@code false} if the messages could not be persisted or the queue is full.
+   */
+  public boolean enqueue(
+      String endpoint,
+      String channels,
+      String icon,
+      List<String> messages,
+      String text,
+      String color) {
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      String[] channelIds = channels.split("[,;]+");
+      if (depth + channelIds.length > MAX_DEPTH) {
+        logger.warning("Mattermost outbound queue is full, dropping message: " + messages.get(0));
+        return false;
+      }
+      List<OutboundMessage> batch = new ArrayList<>(channelIds.length);
+      for (String channel : channelIds) {
+        batch.add(
+            new OutboundMessage(
+                nextId++, now, endpoint, channel.trim(), icon, messages, text, color));
+      }
+      try {
+        journal.append(batch);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Could not write " + journal.getFile(), e);
+        discard(batch);
+        return false;
+      }
+      for (OutboundMessage outbound : batch) {
+        add(new Entry(outbound));
+      }
+      notifyAll();
+    }
+    start();
+    return true;
+  }
+
+  /** Adds the message to the end of its endpoint's lane. */
+  private void add(Entry entry) {
+    Lane lane = lanes.computeIfAbsent(entry.message.getEndpoint(), Lane::new);
+    lane.entries.addLast(entry);
+    depth++;
+    if (lane.entries.size() == 1 && !lane.busy) {
+      idleLanes.add(lane);
+    }
+  }
+
+  /** Number of messages waiting to be delivered. */
+  public synchronized int getDepth() {
+    return depth;
+  }
+
+  /** Age of the oldest pending message, or 0 if the queue is empty. */
+  public synchronized long getOldestEntryAgeMillis() {
+    long oldest = Long.MAX_VALUE;
+    for (Lane lane : lanes.values()) {
+      // each lane is in the order its messages were enqueued
+      oldest = Math.min(oldest, lane.entries.peekFirst().message.getEnqueuedAt());
+    }
+    return depth == 0 ? 0 : System.currentTimeMillis() - oldest;
+  }
+
+  public String getOldestEntryAgeString() {
+    return Util.getTimeSpanString(getOldestEntryAgeMillis());
+  }
+
+  /** Number of messages delivered during the last minute. */
+  public synchronized int getDrainRatePerMinute() {
+    pruneDeliveries(System.currentTimeMillis());
+    return deliveries.size();
+  }
+
+  private synchronized void start() {
+    if ((dispatcher == null || !dispatcher.isAlive()) && !stopped) {
+      dispatcher = new Thread(this::dispatch, "Mattermost outbound queue dispatcher");
+      dispatcher.setDaemon(true);
+      dispatcher.start();
+    }
+  }
+
+  /**
+   * Stops the dispatcher and closes the journal once the posts in flight were acknowledged, or
+   * after {@link #STOP_TIMEOUT_MILLIS}. Posts still in flight then are delivered again after a
+   * restart.
+   */
+  void stop() {
+    Thread thread;
+    synchronized (this) {
+      stopped = true;
+      notifyAll();
+      thread = dispatcher;
+    }
+    long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+    try {
+      if (thread != null) {
+        thread.join(STOP_TIMEOUT_MILLIS);
+      }
+      synchronized (this) {
+        long now;
+        while (inFlight > 0 && (now = System.currentTimeMillis()) < deadline) {
+          wait(deadline - now);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      if (inFlight > 0) {
+        logger.warning(
+            "Stopped waiting for Mattermost notifications in flight to "
+                + inFlight
+                + " endpoint(s); they will be delivered again after a restart");
+      }
+      closed = true;
+      journal.close();
+    }
+  }
+
+  private void dispatch() {
+    while (!stopped) {
+      Entry entry;
+      try {
+        entry = awaitNextDue();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (entry == null) {
+        continue;
+      }
+      OutboundMessage message = entry.message;
+      CompletableFuture<PublishResult> result;
+      try {
+        StandardMattermostService service =
+            new StandardMattermostService(message.getEndpoint(), message.getChannel(), message.getIcon());
+        // the queue schedules its own retries
+        service.setRetryPolicy(RetryPolicy.NONE);
+        result = service.publishAsync(message.getMessages(), message.getText(), message.getColor());
+      } catch (RuntimeException e) {
+        result = CompletableFuture.completedFuture(failure(message, e));
+      }
+      result.whenComplete(
+          (published, error) -> completed(entry, error == null ? published : failure(message, error)));
+    }
+  }
+
+  private static PublishResult failure(OutboundMessage message, Throwable error) {
+    return PublishResult.failure(message.getChannel(), PublishResult.NO_RESPONSE, 0, error);
+  }
+
+  /**
+   * Waits until the first message of a lane without a post in flight is due for delivery,
+   * discarding the ones that expired. The returned message's lane is then marked busy.
+   */
+  private synchronized Entry awaitNextDue() throws InterruptedException {
+    long now = System.currentTimeMillis();
+    Lane lane;
+    while ((lane = idleLanes.peek()) != null) {
+      Entry entry = lane.entries.peekFirst();
+      if (now - entry.message.getEnqueuedAt() > MAX_AGE_MILLIS) {
+        logger.warning(
+            "Discarding Mattermost notification to "
+                + entry.message.getChannel()
+                + " that could not be delivered within "
+                + Util.getTimeSpanString(MAX_AGE_MILLIS)
+                + ": "
+                + entry.message.getMessage());
+        idleLanes.poll();
+        remove(lane);
+        continue;
+      }
+      if (entry.notBefore > now) {
+        break;
+      }
+      idleLanes.poll();
+      lane.busy = true;
+      inFlight++;
+      return entry;
+    }
+    if (!stopped) {
+      // woken up early by new messages and by completed posts
+      wait(lane == null ? 0 : lane.due() - now);
+    }
+    return null;
+  }
+
+  private synchronized void completed(Entry entry, PublishResult result) {
+    Lane lane = lanes.get(entry.message.getEndpoint());
+    lane.busy = false;
+    inFlight--;
+    notifyAll();
+    if (closed) {
+      // the journal still holds the message, it is delivered again after a restart
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (result.isSuccess()
+        || !(RetryPolicy.isRetryable(result) || CircuitBreaker.isShortCircuited(result))) {
+      if (!result.isSuccess()) {
+        logger.warning(
+            "Discarding Mattermost notification to "
+                + entry.message.getChannel()
+                + " rejected with status "
+                + result.getStatusCode());
+      } else {
+        deliveries.addLast(now);
+        pruneDeliveries(now);
+      }
+      remove(lane);
+    } else {
+      entry.attempts++;
+      entry.notBefore = now + RetryPolicy.current().delayMillis(entry.attempts, result);
+      logger.fine(
+          "Delivery of queued Mattermost notification "
+              + entry.message.getId()
+              + " failed (attempt "
+              + entry.attempts
+              + "), retrying later");
+      idleLanes.add(lane);
+    }
+  }
+
+  /** Removes the first message of the lane, which has no post in flight, and acknowledges it. */
+  private void remove(Lane lane) {
+    Entry entry = lane.entries.removeFirst();
+    depth--;
+    if (lane.entries.isEmpty()) {
+      lanes.remove(lane.endpoint);
+    } else {
+      idleLanes.add(lane);
+    }
+    acknowledge(entry);
+  }
+
+  private void acknowledge(Entry entry) {
+    try {
+      if (journal.acknowledge(entry.message.getId()) || depth == 0) {
+        List<OutboundMessage> messages = new ArrayList<>(depth);
+        for (Lane lane : lanes.values()) {
+          for (Entry e : lane.entries) {
+            messages.add(e.message);
+          }
+        }
+        // ids follow the order the messages were enqueued in
+        messages.sort(Comparator.comparingLong(OutboundMessage::getId));
+        journal.compact(messages);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not write " + journal.getFile(), e);
+    }
+  }
+
+  /** Best effort to keep a partly written batch from being replayed. */
+  private void discard(List<OutboundMessage> batch) {
+    try {
+      for (OutboundMessage message : batch) {
+        journal.acknowledge(message.getId());
+      }
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Could not write " + journal.getFile(), e);
+    }
+  }
+
+  private void pruneDeliveries(long now) {
+    while (!deliveries.isEmpty() && deliveries.peekFirst() < now - DRAIN_RATE_WINDOW_MILLIS) {
+      deliveries.removeFirst();
+    }
+  }
+
+  private static final class Entry {
+    private final OutboundMessage message;
+    private int attempts;
+    private long notBefore;
+
+    Entry(OutboundMessage message) {
+      this.message = message;
+    }
+  }
+
+  /** The pending messages to one endpoint, in the order they were enqueued. */
+  private static final class Lane {
+    private final String endpoint;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    /** Whether the first message is being posted. */
+    private boolean busy;
+
+    Lane(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    /** When the first message is due; only called while the lane has messages. */
+    long due() {
+      return entries.peekFirst().notBefore;
+    }
+  }
+}
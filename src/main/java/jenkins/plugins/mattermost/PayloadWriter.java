@@ -0,0 +1,215 @@
+package jenkins.plugins.mattermost;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the JSON payload of a webhook post as UTF-8 straight into a growable byte buffer, without
+ * building an intermediate object tree or string. The attachments are written once per message by
+ * {@link #attachments}; each channel then only adds the few fields that differ.
+ */
+final class PayloadWriter {
+
+  /** Buffers that grew beyond this are not kept for reuse. */
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+  private static final ThreadLocal<PayloadWriter> reusable =
+      ThreadLocal.withInitial(() -> new PayloadWriter(1024));
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private byte[] buffer;
+  private int size;
+
+  PayloadWriter(int capacity) {
+    buffer = new byte[capacity];
+  }
+
+  /**
+   * An empty writer for the calling thread. Its buffer is overwritten by the next call on the same
+   * thread, so the content must be used before then.
+   */
+  static PayloadWriter reuse() {
+    PayloadWriter writer = reusable.get();
+    if (writer.buffer.length > MAX_RETAINED_CAPACITY) {
+      writer = new PayloadWriter(1024);
+      reusable.set(writer);
+    }
+    writer.size = 0;
+    return writer;
+  }
+
+  /** The {@code attachments} array of a post, as UTF-8 JSON. */
+  static byte[] attachments(List<Attachment> attachments, boolean withPretext) {
+    PayloadWriter writer = reuse();
+    writer.writeAttachments(attachments, withPretext);
+    return writer.toByteArray();
+  }
+
+  /** Writes a complete payload around attachments written by {@link #attachments}. */
+  PayloadWriter writePost(
+      String text, byte[] attachmentsJson, String channel, String username, String icon) {
+    write('{');
+    field("attachments").write(attachmentsJson, 0, attachmentsJson.length);
+    optionalField("text", text);
+    if (!channel.isEmpty()) {
+      optionalField("channel", channel);
+    }
+    optionalField("username", username);
+    optionalField("icon_url", icon);
+    write('}');
+    return this;
+  }
+
+  private void writeAttachments(List<Attachment> attachments, boolean withPretext) {
+    write('[');
+    for (int i = 0; i < attachments.size(); i++) {
+      Attachment attachment = attachments.get(i);
+      if (i > 0) {
+        write(',');
+      }
+      write('{');
+      field("fallback").string(attachment.getMessage());
+      write(',');
+      field("color").string(attachment.getColor());
+      write(',');
+      field("fields").ascii("[{\"short\":false,\"value\":").string(attachment.getMessage());
+      ascii("}]");
+      if (withPretext && !attachment.getText().isEmpty()) {
+        write(',');
+        field("pretext").string(attachment.getText());
+      }
+      write(',');
+      field("mrkdwn_in").ascii("[\"pretext\",\"text\",\"fields\"]");
+      write('}');
+    }
+    write(']');
+  }
+
+  /** Writes a field unless its value is {@code null}, like {@code JSONObject.put} would. */
+  private void optionalField(String name, String value) {
+    if (value != null) {
+      write(',');
+      field(name).string(value);
+    }
+  }
+
+  private PayloadWriter field(String name) {
+    write('"');
+    ascii(name);
+    return ascii("\":");
+  }
+
+  private PayloadWriter ascii(String s) {
+    ensureCapacity(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      buffer[size++] = (byte) s.charAt(i);
+    }
+    return this;
+  }
+
+  /** Writes a JSON string; {@code null} is written as JSON {@code null}. */
+  PayloadWriter string(String s) {
+    if (s == null) {
+      return ascii("null");
+    }
+    // worst case: every char is a \\u escape, or a surrogate pair taking 4 bytes for 2 chars
+    ensureCapacity(6 * s.length() + 2);
+    byte[] b = buffer;
+    int n = size;
+    b[n++] = '"';
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c >= 0x20 && c < 0x80) {
+        if (c == '"' || c == '\\') {
+          b[n++] = '\\';
+        }
+        b[n++] = (byte) c;
+      } else if (c < 0x20) {
+        b[n++] = '\\';
+        switch (c) {
+          case '\n':
+            b[n++] = 'n';
+            break;
+          case '\r':
+            b[n++] = 'r';
+            break;
+          case '\t':
+            b[n++] = 't';
+            break;
+          case '\b':
+            b[n++] = 'b';
+            break;
+          case '\f':
+            b[n++] = 'f';
+            break;
+          default:
+            b[n++] = 'u';
+            b[n++] = '0';
+            b[n++] = '0';
+            b[n++] = HEX[c >> 4];
+            b[n++] = HEX[c & 0xf];
+        }
+      } else if (c < 0x800) {
+        b[n++] = (byte) (0xc0 | (c >> 6));
+        b[n++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < s.length()
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        b[n++] = (byte) (0xf0 | (cp >> 18));
+        b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        b[n++] = (byte) (0x80 | (cp & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogate, replaced like String.getBytes does
+        b[n++] = '?';
+      } else {
+        b[n++] = (byte) (0xe0 | (c >> 12));
+        b[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        b[n++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    b[n++] = '"';
+    size = n;
+    return this;
+  }
+
+  private PayloadWriter write(char c) {
+    ensureCapacity(1);
+    buffer[size++] = (byte) c;
+    return this;
+  }
+
+  private PayloadWriter write(byte[] bytes, int offset, int length) {
+    ensureCapacity(length);
+    System.arraycopy(bytes, offset, buffer, size, length);
+    size += length;
+    return this;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+    }
+  }
+
+  /** The buffer holding the written bytes; only the first {@link #size} bytes are valid. */
+  byte[] buffer() {
+    return buffer;
+  }
+
+  int size() {
+    return size;
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(buffer, size);
+  }
+
+  @Override
+  public String toString() {
+    return new String(buffer, 0, size, StandardCharsets.UTF_8);
+  }
+}
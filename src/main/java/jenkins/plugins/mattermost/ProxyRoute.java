@@ -0,0 +1,139 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
+import jenkins.model.Jenkins;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+
+/**
+ * How posts to one Mattermost host are routed: directly or through the custom or the global proxy.
+ * Routes are resolved once per host and cached until new {@link GlobalSettings} are published or
+ * the Jenkins proxy configuration changes, so posting does not look up descriptors or match no-proxy patterns.
+ */
+final class ProxyRoute {
+
+  private static final Logger logger = Logger.getLogger(ProxyRoute.class.getName());
+
+  static final int TIMEOUT_MILLIS = 10000;
+
+  /** The cached routes, replaced as a whole so they always match the proxy they came from. */
+  private static final AtomicReference<Routes> routes = new AtomicReference<>(new Routes(null));
+
+  private final @CheckForNull ProxyConfiguration proxy;
+  private final @CheckForNull String proxyKey;
+  private final RequestConfig requestConfig;
+
+  private ProxyRoute(@CheckForNull ProxyConfiguration proxy) {
+    this.proxy = proxy;
+    this.proxyKey = HttpClientRegistry.proxyKey(proxy);
+    RequestConfig.Builder builder =
+        RequestConfig.custom().setConnectTimeout(TIMEOUT_MILLIS).setSocketTimeout(TIMEOUT_MILLIS);
+    if (proxy != null) {
+      builder.setProxy(new HttpHost(proxy.name, proxy.port));
+    }
+    this.requestConfig = builder.build();
+  }
+
+  /** The route to the given host. */
+  static ProxyRoute of(HttpHost target) {
+    ProxyConfiguration globalProxy = Jenkins.get().proxy;
+    Routes current = routes.get();
+    if (current.globalProxy != globalProxy) {
+      // the global proxy was reconfigured without being saved, or before we were notified
+      Routes updated = new Routes(globalProxy);
+      current = routes.compareAndSet(current, updated) ? updated : routes.get();
+    }
+    Routes resolved = current;
+    return resolved.byHost.computeIfAbsent(
+        target, host -> resolve(host, resolved.globalProxy, resolved.noProxyHosts));
+  }
+
+  private static ProxyRoute resolve(
+      HttpHost target, @CheckForNull ProxyConfiguration globalProxy, HostGlobMatcher noProxyHosts) {
+    ProxyConfiguration customProxy = GlobalSettings.current().getCustomProxy();
+    if (customProxy != null) {
+      logger.info(
+          "MattermostNotifier using custom proxy "
+              + customProxy.name
+              + ":"
+              + customProxy.port
+              + " for "
+              + target);
+      return new ProxyRoute(customProxy);
+    }
+    if (globalProxy != null && !noProxyHosts.matches(target.getHostName())) {
+      return new ProxyRoute(globalProxy);
+    }
+    return new ProxyRoute(null);
+  }
+
+  /** Whether the host matches none of the no-proxy patterns. */
+  static boolean isProxyRequired(String host, @CheckForNull List<Pattern> noProxyHosts) {
+    if (noProxyHosts != null) {
+      for (Pattern p : noProxyHosts) {
+        if (p.matcher(host).matches()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Forgets every route, so they are resolved again with the current configuration. */
+  static void invalidate() {
+    // a changed global proxy is picked up by the next lookup
+    routes.set(new Routes(routes.get().globalProxy));
+  }
+
+  /** The proxy to use, or {@code null} to connect directly. */
+  @CheckForNull
+  ProxyConfiguration getProxy() {
+    return proxy;
+  }
+
+  /** The {@linkplain HttpClientRegistry#proxyKey key} of the proxy, or {@code null} if none. */
+  @CheckForNull
+  String getProxyKey() {
+    return proxyKey;
+  }
+
+  /** Timeouts and proxy for requests along this route. */
+  RequestConfig getRequestConfig() {
+    return requestConfig;
+  }
+
+  /** The routes resolved with one global proxy and its no-proxy hosts. */
+  private static final class Routes {
+    private final @CheckForNull ProxyConfiguration globalProxy;
+    private final HostGlobMatcher noProxyHosts;
+    private final ConcurrentMap<HttpHost, ProxyRoute> byHost = new ConcurrentHashMap<>();
+
+    Routes(@CheckForNull ProxyConfiguration globalProxy) {
+      this.globalProxy = globalProxy;
+      this.noProxyHosts =
+          HostGlobMatcher.compile(globalProxy != null ? globalProxy.noProxyHost : null);
+    }
+  }
+
+  /** Drops the cached routes when the Jenkins proxy configuration is saved. */
+  @Extension
+  public static final class GlobalProxyListener extends SaveableListener {
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+      if (o instanceof ProxyConfiguration) {
+        invalidate();
+      }
+    }
+  }
+}
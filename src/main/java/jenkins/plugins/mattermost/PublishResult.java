@@ -0,0 +1,159 @@
+package jenkins.plugins.mattermost;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import org.apache.http.HttpStatus;
+
+/**
+ * Outcome of posting a message. A result either describes a single channel, or combines the
+ * results of every channel a message was posted to, in which case it only succeeds if all of them
+ * did.
+ */
+public final class PublishResult {
+
+  /** Status code used when no HTTP response was received. */
+  public static final int NO_RESPONSE = -1;
+
+  private final String channel;
+  private final int statusCode;
+  private final long latencyMillis;
+  private final long retryAfterMillis;
+  private final @CheckForNull Throwable error;
+  private final List<PublishResult> channelResults;
+
+  private PublishResult(
+      String channel,
+      int statusCode,
+      long latencyMillis,
+      long retryAfterMillis,
+      @CheckForNull Throwable error,
+      @CheckForNull List<PublishResult> channelResults) {
+    this.channel = channel;
+    this.statusCode = statusCode;
+    this.latencyMillis = latencyMillis;
+    this.retryAfterMillis = retryAfterMillis;
+    this.error = error;
+    this.channelResults =
+        channelResults != null
+            ? Collections.unmodifiableList(channelResults)
+            : Collections.singletonList(this);
+  }
+
+  /** Result of a post to one channel that received an HTTP response. */
+  public static PublishResult of(String channel, int statusCode, long latencyMillis) {
+    return of(channel, statusCode, latencyMillis, -1);
+  }
+
+  /** Result of a post to one channel whose response asked to retry after the given delay. */
+  public static PublishResult of(
+      String channel, int statusCode, long latencyMillis, long retryAfterMillis) {
+    return new PublishResult(channel, statusCode, latencyMillis, retryAfterMillis, null, null);
+  }
+
+  /** Result of a post to one channel that failed, possibly before any response was received. */
+  public static PublishResult failure(
+      String channel, int statusCode, long latencyMillis, @CheckForNull Throwable error) {
+    return failure(channel, statusCode, latencyMillis, error, -1);
+  }
+
+  /** Result of a post to one channel that failed and should not be retried before the delay. */
+  public static PublishResult failure(
+      String channel,
+      int statusCode,
+      long latencyMillis,
+      @CheckForNull Throwable error,
+      long retryAfterMillis) {
+    return new PublishResult(channel, statusCode, latencyMillis, retryAfterMillis, error, null);
+  }
+
+  /** Combines the results of posting the same message to several channels. */
+  public static PublishResult of(List<PublishResult> channelResults) {
+    if (channelResults.size() == 1) {
+      return channelResults.get(0);
+    }
+    int statusCode = HttpStatus.SC_OK;
+    long latency = 0;
+    Throwable error = null;
+    for (PublishResult result : channelResults) {
+      latency = Math.max(latency, result.latencyMillis);
+      if (!result.isSuccess() && statusCode == HttpStatus.SC_OK) {
+        statusCode = result.statusCode;
+      }
+      if (error == null) {
+        error = result.error;
+      }
+    }
+    String channels =
+        channelResults.stream().map(PublishResult::getChannel).collect(Collectors.joining(","));
+    return new PublishResult(channels, statusCode, latency, -1, error, channelResults);
+  }
+
+  /** The result of posting several messages in turn: the first that failed, or else the last. */
+  static PublishResult ofSequence(List<PublishResult> results) {
+    for (PublishResult result : results) {
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return results.get(results.size() - 1);
+  }
+
+  /** Whether every channel answered with a 2xx status. */
+  public boolean isSuccess() {
+    for (PublishResult result : channelResults) {
+      if (result.error != null || !isSuccessStatus(result.statusCode)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether the HTTP status code reports success, as every 2xx does. */
+  static boolean isSuccessStatus(int statusCode) {
+    return statusCode / 100 == 2;
+  }
+
+  /** The channel spec the message was posted to; empty for the webhook's default channel. */
+  public String getChannel() {
+    return channel;
+  }
+
+  /** The HTTP status code, or {@link #NO_RESPONSE}; for combined results the first failing code. */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /** Wall-clock time of the post; for combined results that of the slowest channel. */
+  public long getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  /** The delay the server asked for in its {@code Retry-After} header, or -1 if it did not. */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+  @CheckForNull
+  public Throwable getError() {
+    return error;
+  }
+
+  /** The per-channel results; a single-channel result contains only itself. */
+  public List<PublishResult> getChannelResults() {
+    return channelResults;
+  }
+
+  @Override
+  public String toString() {
+    return "PublishResult{channel='"
+        + channel
+        + "', statusCode="
+        + statusCode
+        + ", latencyMillis="
+        + latencyMillis
+        + (error != null ? ", error=" + error : "")
+        + "}";
+  }
+}
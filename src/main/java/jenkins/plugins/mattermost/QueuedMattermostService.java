@@ -0,0 +1,51 @@
+package jenkins.plugins.mattermost;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.http.HttpStatus;
+
+/**
+ * Hands messages over to the {@link OutboundQueue} instead of posting them from the calling thread.
+ * A publish succeeds as soon as the message has been persisted; delivery happens in the background.
+ */
+public class QueuedMattermostService implements MattermostService {
+
+  private final String endpoint;
+  private final String room;
+  private final String icon;
+
+  public QueuedMattermostService(String endpoint, String room, String icon) {
+    this.endpoint = endpoint;
+    this.room = room;
+    this.icon = icon;
+  }
+
+  public boolean publish(String message) {
+    return publish(message, "warning");
+  }
+
+  public boolean publish(String message, String color) {
+    return publish(message, "", color);
+  }
+
+  public boolean publish(String message, String text, String color) {
+    return OutboundQueue.get().enqueue(endpoint, room, icon, message, text, color);
+  }
+
+  @Override
+  public CompletableFuture<PublishResult> publishAsync(String message, String text, String color) {
+    return publishAsync(Collections.singletonList(message), text, color);
+  }
+
+  /** Queues the messages as the attachments of a single post. */
+  @Override
+  public CompletableFuture<PublishResult> publishAsync(
+      List<String> messages, String text, String color) {
+    boolean queued = OutboundQueue.get().enqueue(endpoint, room, icon, messages, text, color);
+    return CompletableFuture.completedFuture(
+        queued
+            ? PublishResult.of(room, HttpStatus.SC_ACCEPTED, 0)
+            : PublishResult.failure(room, PublishResult.NO_RESPONSE, 0, null));
+  }
+}
@@ -0,0 +1,158 @@
+package jenkins.plugins.mattermost;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+
+/**
+ * Token buckets that limit the rate of posts to each Mattermost host and to each channel, so that a
+ * burst of completing builds is spread out instead of being throttled by Mattermost. Posts that
+ * have to wait are scheduled for later rather than holding a thread. Buckets that have refilled
+ * completely are dropped from time to time, since a new bucket would start out full anyway.
+ */
+public final class RateLimiter {
+
+  public static final int DEFAULT_RATE_PER_SECOND = 10;
+  public static final int DEFAULT_BURST = 20;
+  public static final int DEFAULT_CHANNEL_RATE_PER_MINUTE = 60;
+
+  /** How often buckets that refilled are looked for. */
+  private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private static final RateLimiter instance = new RateLimiter();
+
+  /** Buckets by host, and by host and channel. */
+  private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+  private final AtomicLong nextSweep = new AtomicLong();
+
+  private volatile int ratePerSecond = DEFAULT_RATE_PER_SECOND;
+  private volatile int burst = DEFAULT_BURST;
+  private volatile int channelRatePerMinute = DEFAULT_CHANNEL_RATE_PER_MINUTE;
+
+  private final AtomicLong delayed = new AtomicLong();
+  private final AtomicLong totalDelayMillis = new AtomicLong();
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  RateLimiter() {}
+
+  public static RateLimiter get() {
+    return instance;
+  }
+
+  /**
+   * Changes the limits; a rate of 0 disables the corresponding limit. The burst is the number of
+   * posts that may be sent at once after a quiet period.
+   */
+  public void configure(int ratePerSecond, int burst, int channelRatePerMinute) {
+    this.ratePerSecond = ratePerSecond;
+    this.burst = burst;
+    this.channelRatePerMinute = channelRatePerMinute;
+  }
+
+  /**
+   * Takes a token for a post to the channel on the given host, and returns a future that completes
+   * when the post may be sent.
+   */
+  CompletableFuture<Void> acquire(@CheckForNull String host, String channel) {
+    long waitNanos = reserve(host, channel, System.nanoTime());
+    if (waitNanos <= 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+    delayed.incrementAndGet();
+    totalDelayMillis.addAndGet(waitMillis);
+    waiting.incrementAndGet();
+    return MattermostExecutors.delay(waitMillis).whenComplete((ignored, e) -> waiting.decrementAndGet());
+  }
+
+  /** Takes a token from both buckets and returns how long the post has to wait for them. */
+  long reserve(@CheckForNull String host, String channel, long now) {
+    if (host == null) {
+      return 0;
+    }
+    sweep(now);
+    long wait = 0;
+    int rate = ratePerSecond;
+    int burstSize = Math.max(1, burst);
+    if (rate > 0) {
+      wait = bucket(host).reserve(now, rate / (double) TimeUnit.SECONDS.toNanos(1), burstSize);
+    }
+    int channelRate = channelRatePerMinute;
+    if (channelRate > 0) {
+      wait =
+          Math.max(
+              wait,
+              bucket(host + '#' + channel)
+                  .reserve(now, channelRate / (double) TimeUnit.MINUTES.toNanos(1), burstSize));
+    }
+    return wait;
+  }
+
+  private TokenBucket bucket(String key) {
+    return buckets.computeIfAbsent(key, k -> new TokenBucket());
+  }
+
+  /** Drops the buckets that are full again, at most once per {@link #SWEEP_INTERVAL_NANOS}. */
+  private void sweep(long now) {
+    long due = nextSweep.get();
+    if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+      return;
+    }
+    buckets.values().removeIf(bucket -> bucket.isFull(now));
+  }
+
+  /** Number of buckets currently kept. */
+  int getBucketCount() {
+    return buckets.size();
+  }
+
+  /** Number of posts that had to wait for a token. */
+  public long getDelayedCount() {
+    return delayed.get();
+  }
+
+  /** Average wait of the posts that had to wait. */
+  public long getAverageDelayMillis() {
+    long count = delayed.get();
+    return count == 0 ? 0 : totalDelayMillis.get() / count;
+  }
+
+  /** Number of posts currently waiting for a token. */
+  public int getWaitingCount() {
+    return waiting.get();
+  }
+
+  /**
+   * A bucket whose token count may go negative: a post that finds it empty still takes a token and
+   * waits until the bucket would have refilled it, so later posts queue up behind it in order.
+   */
+  static final class TokenBucket {
+    private double tokens = Double.NaN;
+    private long lastRefill;
+    private double tokensPerNano;
+    private int capacity;
+
+    synchronized long reserve(long now, double tokensPerNano, int capacity) {
+      this.tokensPerNano = tokensPerNano;
+      this.capacity = capacity;
+      if (Double.isNaN(tokens)) {
+        tokens = capacity;
+      } else {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+      }
+      lastRefill = now;
+      tokens -= 1;
+      return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    /** Whether the bucket has refilled completely since it was last used. */
+    synchronized boolean isFull(long now) {
+      return Double.isNaN(tokens) || tokens + (now - lastRefill) * tokensPerNano >= capacity;
+    }
+  }
+}
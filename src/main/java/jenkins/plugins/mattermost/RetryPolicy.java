@@ -0,0 +1,124 @@
+package jenkins.plugins.mattermost;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Decides whether a failed post is retried and how long to wait before the next attempt: an
+ * exponential backoff with full jitter, but never sooner than the server asked for in its {@code
+ * Retry-After} header, as long as that is within the maximum delay.
+ */
+public final class RetryPolicy {
+
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+  public static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+  public static final long DEFAULT_MAX_DELAY_MILLIS = 30000;
+
+  /** Only ever try once. */
+  static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+  static final RetryPolicy DEFAULT =
+      new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+
+  private final int maxAttempts;
+  private final long baseDelayMillis;
+  private final long maxDelayMillis;
+
+  public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.baseDelayMillis = Math.max(0, baseDelayMillis);
+    this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+  }
+
+  /** The policy configured globally, or the default one when Jenkins is not available. */
+  static RetryPolicy current() {
+    return GlobalSettings.current().getRetryPolicy();
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public long getBaseDelayMillis() {
+    return baseDelayMillis;
+  }
+
+  public long getMaxDelayMillis() {
+    return maxDelayMillis;
+  }
+
+  /** Whether another attempt should follow the given failed one; attempts are counted from 1. */
+  boolean shouldRetry(PublishResult result, int attempt) {
+    return attempt < maxAttempts && isRetryable(result);
+  }
+
+  /**
+   * Whether the failure is likely to be transient. Rate limiting, gateway errors, I/O errors and
+   * posts rejected by a saturated publisher pool are; other client errors, malformed endpoints and
+   * certificate problems will fail again, and posts short-circuited by an open {@link
+   * CircuitBreaker} are meant to fail fast.
+   */
+  static boolean isRetryable(PublishResult result) {
+    if (result.isSuccess()) {
+      return false;
+    }
+    switch (result.getStatusCode()) {
+      case PublishResult.NO_RESPONSE:
+        Throwable error = result.getError();
+        if (error instanceof RejectedExecutionException) {
+          return true;
+        }
+        return error instanceof IOException
+            && !(error instanceof MalformedURLException)
+            && !(error instanceof CircuitBreaker.OpenException)
+            && !(error instanceof SSLHandshakeException)
+            && !(error instanceof SSLPeerUnverifiedException);
+      case HttpStatus.SC_REQUEST_TIMEOUT:
+      case 429: // Too Many Requests
+      case HttpStatus.SC_BAD_GATEWAY:
+      case HttpStatus.SC_SERVICE_UNAVAILABLE:
+      case HttpStatus.SC_GATEWAY_TIMEOUT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * How long to wait after the given failed attempt; attempts are counted from 1. A {@code
+   * Retry-After} further away than the maximum delay, such as a date hours ahead, is capped to it.
+   */
+  long delayMillis(int attempt, PublishResult result) {
+    int shift = Math.min(attempt - 1, 30);
+    long backoff =
+        baseDelayMillis > (maxDelayMillis >> shift) ? maxDelayMillis : baseDelayMillis << shift;
+    long jittered = ThreadLocalRandom.current().nextLong(backoff + 1);
+    return Math.max(Math.min(result.getRetryAfterMillis(), maxDelayMillis), jittered);
+  }
+
+  /**
+   * Parses a {@code Retry-After} header, which is either a number of seconds or an HTTP date.
+   * Returns -1 when the header is absent or cannot be parsed.
+   */
+  static long parseRetryAfter(@CheckForNull String value, long now) {
+    if (value == null || value.trim().isEmpty()) {
+      return -1;
+    }
+    String trimmed = value.trim();
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(trimmed)));
+    } catch (NumberFormatException e) {
+      Date date = DateUtils.parseDate(trimmed);
+      return date != null ? Math.max(0, date.getTime() - now) : -1;
+    }
+  }
+}
@@ -2,23 +2,16 @@ package jenkins.plugins.mattermost;
 
 import hudson.ProxyConfiguration;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.client.LaxRedirectStrategy;
-import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
-import org.apache.http.ssl.SSLContexts;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.apache.http.util.EntityUtils;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -27,9 +20,17 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -40,45 +41,60 @@ public class StandardMattermostService implements MattermostService
 
 	private static final Logger logger = Logger.getLogger(StandardMattermostService.class.getName());
 
+	private static final int MAX_CACHED_SERVICES =
+			SystemProperties.getInteger(StandardMattermostService.class.getName() + ".maxCachedServices", 256);
+
+	/** Services by endpoint, channel spec and icon, least recently used first. */
+	private static final Map<List<String>, StandardMattermostService> services =
+			new LinkedHashMap<List<String>, StandardMattermostService>(16, 0.75f, true)
+			{
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<List<String>, StandardMattermostService> eldest)
+				{
+					return size() > MAX_CACHED_SERVICES;
+				}
+			};
+
 	private String endpoint;
-	private final String[] channelIds;
+	private URL url;
+	private HttpHost httpHost;
+	private MalformedURLException endpointError;
+	private final List<ChannelTarget> targets;
 	private final String icon;
+	private RetryPolicy retryPolicy;
 
 	public StandardMattermostService(String endpoint, String channelId, String icon)
 	{
 		super();
-		this.endpoint = endpoint;
-		this.channelIds = channelId.split("[,;]+");
+		setEndpoint(endpoint);
+		this.targets = ChannelTarget.parseAll(channelId);
 		this.icon = icon;
+		for (ChannelTarget target : targets)
+		{
+			if (target.getError() != null)
+			{
+				logger.warning(target.getError());
+			}
+		}
 	}
 
-	private static JSONObject createPayload(String message, String text, String color, String roomId, String userId, String icon)
+	/**
+	 * A service for the given configuration, shared with every other caller using the same one, so
+	 * the endpoint and channels are only parsed once.
+	 */
+	public static StandardMattermostService get(String endpoint, String channelId, String icon)
 	{
-		JSONObject json = new JSONObject();
-		JSONObject field = new JSONObject();
-		field.put("short", false);
-		field.put("value", message);
-		JSONArray fields = new JSONArray();
-		fields.put(field);
-
-		JSONObject attachment = new JSONObject();
-		attachment.put("fallback", message);
-		attachment.put("color", color);
-		attachment.put("fields", fields);
-		JSONArray mrkdwn = new JSONArray();
-		mrkdwn.put("pretext");
-		mrkdwn.put("text");
-		mrkdwn.put("fields");
-		attachment.put("mrkdwn_in", mrkdwn);
-		JSONArray attachments = new JSONArray();
-		attachments.put(attachment);
-		json.put("text", text);
-		json.put("attachments", attachments);
-
-		if (!roomId.isEmpty()) json.put("channel", roomId);
-		json.put("username", userId);
-		json.put("icon_url", icon);
-		return json;
+		List<String> key = Arrays.asList(endpoint, channelId, icon);
+		synchronized (services)
+		{
+			StandardMattermostService service = services.get(key);
+			if (service == null)
+			{
+				service = new StandardMattermostService(endpoint, channelId, icon);
+				services.put(key, service);
+			}
+			return service;
+		}
 	}
 
 	public static String createRegexFromGlob(String glob)
@@ -109,7 +125,7 @@ public class StandardMattermostService implements MattermostService
 		return out.toString();
 	}
 
-	private static MattermostNotifier.DescriptorImpl getServiceDescriptor(){
+	static MattermostNotifier.DescriptorImpl getServiceDescriptor(){
 		MattermostNotifier.DescriptorImpl mattermostNotifierDescriptor =
 				Jenkins.get().getDescriptorByType(MattermostNotifier.DescriptorImpl.class);
 
@@ -133,138 +149,229 @@ public class StandardMattermostService implements MattermostService
 
 	public boolean publish(String message, String text, String color)
 	{
-		boolean result = true;
-		for (String userAndRoomId : channelIds)
+		return publishAll(message, text, color).isSuccess();
+	}
+
+	/**
+	 * Posts the message to every configured channel and waits for the combined outcome.
+	 */
+	public PublishResult publishAll(String message, String text, String color)
+	{
+		return publishAsync(message, text, color).join();
+	}
+
+	/**
+	 * Posts the message to every configured channel concurrently on the shared publisher pool. The
+	 * returned future completes once every channel has been posted to, so its latency is that of the
+	 * slowest channel rather than the sum of all of them. Transient failures are retried according
+	 * to the {@link RetryPolicy}; no thread is held while waiting for the next attempt.
+	 */
+	@Override
+	public CompletableFuture<PublishResult> publishAsync(String message, String text, String color)
+	{
+		return publishAsync(Collections.singletonList(new Attachment(message, text, color)));
+	}
+
+	/**
+	 * Posts the messages as the attachments of one post to every configured channel.
+	 */
+	@Override
+	public CompletableFuture<PublishResult> publishAsync(List<String> messages, String text, String color)
+	{
+		List<Attachment> attachments = new ArrayList<>(messages.size());
+		for (String message : messages)
 		{
-			//String url = endpoint;
-			URL url;
-			try
-			{
+			attachments.add(new Attachment(message, text, color));
+		}
+		return publishAsync(attachments);
+	}
 
-				String roomId = userAndRoomId.trim();
-				String userId = "jenkins";
-				url = new URL(this.endpoint);
-				HttpHost httpHost = new HttpHost(url.getHost(), url.getPort(), url.getProtocol());
-				HttpClientBuilder clientBuilder = HttpClients.custom();
-				clientBuilder.setSSLContext(SSLContexts.createDefault());
-				clientBuilder.setRedirectStrategy(new LaxRedirectStrategy());
-				RequestConfig.Builder reqconfigconbuilder = RequestConfig.custom();
-				reqconfigconbuilder.setConnectTimeout(10000);
-				reqconfigconbuilder.setSocketTimeout(10000);
-
-				ProxyConfiguration globalProxy = Jenkins.get().proxy;
-				MattermostNotifier.DescriptorImpl serviceDescriptor = getServiceDescriptor();
-
-				if (serviceDescriptor.isUseCustomProxy()) {
-
-					ProxyConfiguration customProxy = new ProxyConfiguration(
-							serviceDescriptor.getProxyServer(),
-							serviceDescriptor.getProxyPort(),
-							serviceDescriptor.getProxyUsername(),
-							serviceDescriptor.getProxyPassword().getPlainText(),
-							null,
-							null);
-					setupProxy(customProxy, clientBuilder, reqconfigconbuilder);
-					logger.info("MattermostNotifier using custom proxy: "+ customProxy.name + ":" + customProxy.port);
-				} else if (globalProxy != null && isProxyRequired(ProxyConfiguration.getNoProxyHostPatterns(globalProxy.noProxyHost)))
-				{
-					setupProxy(globalProxy, clientBuilder, reqconfigconbuilder);
-				}
+	/**
+	 * Posts one message with the given attachments to every configured channel.
+	 */
+	CompletableFuture<PublishResult> publishAsync(List<Attachment> attachments)
+	{
+		Post post = new Post(attachments);
+		RetryPolicy policy = retryPolicy != null ? retryPolicy : RetryPolicy.current();
+		List<CompletableFuture<PublishResult>> futures = new ArrayList<>(targets.size());
+		for (ChannelTarget target : targets)
+		{
+			futures.add(publishToChannelAsync(target, post, policy, 1));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+				.thenApply(ignored -> PublishResult.of(futures.stream().map(CompletableFuture::join).collect(Collectors.toList())));
+	}
 
-				RequestConfig config = reqconfigconbuilder.build();
-				CloseableHttpClient client = clientBuilder.build();
-				RequestBuilder requestBuilder = RequestBuilder.post(url.toURI());
-				requestBuilder.setConfig(config);
-				requestBuilder.setCharset(StandardCharsets.UTF_8);
-
-				// Supported channel string formats:
-				// - user@channel
-				// - user@@dmchannel
-				// - channel
-				// - @dmchannel
-				int atPos = userAndRoomId.indexOf("@");
-				if (atPos > 0 && atPos < userAndRoomId.length() - 1)
+	private CompletableFuture<PublishResult> publishToChannelAsync(ChannelTarget target, Post post, RetryPolicy policy, int attempt)
+	{
+		String channel = target.getSpec();
+		if (target.getError() != null || endpointError != null)
+		{
+			IOException error = target.getError() != null ? new IOException(target.getError()) : endpointError;
+			logger.log(Level.WARNING, "Error posting to Mattermost", error);
+			return CompletableFuture.completedFuture(PublishResult.failure(channel, PublishResult.NO_RESPONSE, 0, error));
+		}
+		CircuitBreaker breaker = CircuitBreaker.forHost(httpHost);
+		if (breaker.isOpen())
+		{
+			// checked before taking rate limit tokens, which real posts need once it half-opens
+			return CompletableFuture.completedFuture(shortCircuited(target, breaker, policy));
+		}
+		return RateLimiter.get().acquire(httpHost.toURI(), channel)
+				.thenApplyAsync(ignored -> publishToChannel(target, post, breaker, policy), MattermostExecutors.publisher())
+				.exceptionally(e ->
 				{
-					userId = userAndRoomId.substring(0, atPos).trim();
-					roomId = userAndRoomId.substring(atPos + 1).trim();
-				}
-
-				String roomIdString = roomId;
-				if (roomIdString.isEmpty())
+					Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+					if (cause instanceof RejectedExecutionException)
+					{
+						logger.warning("Too many Mattermost posts pending, not posting to " + target + " now");
+					} else
+					{
+						logger.log(Level.WARNING, "Error posting to Mattermost", e);
+					}
+					return PublishResult.failure(channel, PublishResult.NO_RESPONSE, 0, cause);
+				})
+				.thenCompose(result ->
 				{
-					roomIdString = "(default)";
-				}
+					if (!policy.shouldRetry(result, attempt))
+					{
+						return CompletableFuture.completedFuture(result);
+					}
+					long delay = policy.delayMillis(attempt, result);
+					logger.info("Retrying post to " + target + " in " + delay + "ms (attempt "
+							+ (attempt + 1) + " of " + policy.getMaxAttempts() + ")");
+					return MattermostExecutors.delay(delay)
+							.thenCompose(ignored -> publishToChannelAsync(target, post, policy, attempt + 1));
+				});
+	}
+
+	private PublishResult publishToChannel(ChannelTarget target, Post post, CircuitBreaker breaker, RetryPolicy policy)
+	{
+		long start = System.nanoTime();
+		if (!breaker.tryAcquire())
+		{
+			return shortCircuited(target, breaker, policy);
+		}
+		PublishResult result = null;
+		try
+		{
+			result = send(target, post, start);
+			return result;
+		} finally
+		{
+			breaker.record(result, elapsedMillis(start));
+		}
+	}
 
+	/**
+	 * The result of a post the breaker did not let through. Short-circuited posts are not retried,
+	 * so unless the caller schedules its own retries the notification is lost and that is logged.
+	 */
+	private static PublishResult shortCircuited(ChannelTarget target, CircuitBreaker breaker, RetryPolicy policy)
+	{
+		String reason = "Circuit breaker for " + breaker.getEndpoint() + " is " + breaker.getState()
+				+ ", not posting to " + target;
+		if (policy == RetryPolicy.NONE)
+		{
+			logger.fine(reason);
+		} else
+		{
+			logger.warning(reason + "; the notification is dropped");
+		}
+		return PublishResult.failure(target.getSpec(), PublishResult.NO_RESPONSE, 0,
+				new CircuitBreaker.OpenException(breaker.getEndpoint()), breaker.remainingOpenMillis());
+	}
 
-				JSONObject json = createPayload(message, text, color, roomId, userId, icon);
-				logger.info("Playload: " + json.toString());
-				requestBuilder.setEntity(new StringEntity(json.toString(), ContentType.APPLICATION_JSON));
-				CloseableHttpResponse execute = client.execute(httpHost, requestBuilder.build());
+	private PublishResult send(ChannelTarget target, Post post, long start)
+	{
+		try
+		{
+			ProxyRoute route = ProxyRoute.of(httpHost);
+			RequestBuilder requestBuilder = RequestBuilder.post(url.toURI());
+			requestBuilder.setConfig(route.getRequestConfig());
+			requestBuilder.setCharset(StandardCharsets.UTF_8);
+
+			// the request is sent before this thread writes another payload, so the buffer can be reused
+			PayloadWriter payload = PayloadWriter.reuse().writePost(post.text, post.attachmentsJson, target.getRoom(), target.getUser(), icon);
+			if (logger.isLoggable(Level.FINE))
+			{
+				logger.fine("Payload: " + payload);
+			}
+			requestBuilder.setEntity(new ByteArrayEntity(payload.buffer(), 0, payload.size(), ContentType.APPLICATION_JSON));
+			try (HttpClientRegistry.Lease lease = HttpClientRegistry.acquire(httpHost, route.getProxy(), route.getProxyKey());
+					CloseableHttpResponse execute = lease.client().execute(httpHost, requestBuilder.build()))
+			{
 				int responseCode = execute.getStatusLine().getStatusCode();
-				if (responseCode != HttpStatus.SC_OK)
+				long retryAfter = -1;
+				if (!PublishResult.isSuccessStatus(responseCode))
 				{
-					result = false;
-					logHttpErrorStatus(execute, responseCode, roomIdString, url);
+					Header retryAfterHeader = execute.getFirstHeader(HttpHeaders.RETRY_AFTER);
+					if (retryAfterHeader != null)
+					{
+						retryAfter = RetryPolicy.parseRetryAfter(retryAfterHeader.getValue(), System.currentTimeMillis());
+					}
+					logHttpErrorStatus(execute, responseCode, target.toString(), url);
 				} else
-					logger.info("Status " + responseCode + ": to " + roomIdString + "@" + url.getHost() + "/***: " + message + " (" + color + ")");
-			} catch(java.net.URISyntaxException | java.io.IOException e)
-			{
-				logger.log(Level.WARNING, "Error posting to Mattermost", e);
-				result = false;
+					logger.info("Status " + responseCode + ": to " + target + "@" + url.getHost() + "/***: " + post.describe());
+				// fully consume the entity so the connection goes back to the pool
+				EntityUtils.consume(execute.getEntity());
+				return PublishResult.of(target.getSpec(), responseCode, elapsedMillis(start), retryAfter);
 			}
+		} catch(java.net.URISyntaxException | java.io.IOException e)
+		{
+			logger.log(Level.WARNING, "Error posting to Mattermost", e);
+			return PublishResult.failure(target.getSpec(), PublishResult.NO_RESPONSE, elapsedMillis(start), e);
 		}
-		return result;
 	}
 
-	private void logHttpErrorStatus(CloseableHttpResponse execute, int responseCode, String roomIdString, URL hosturl) throws IOException
+	/** A message whose attachments have been serialized once for all channels and attempts. */
+	private static final class Post
 	{
-		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(execute.getEntity().getContent(), Charset.defaultCharset()));
-		try {
-			String collect = bufferedReader.lines().collect(Collectors.joining(" "));
-			logger.log(Level.WARNING, "WARN Status " + responseCode + ": to " + roomIdString + "@" + hosturl.getHost() + ": " + collect);
-		} finally {
-			bufferedReader.close();
+		private final List<Attachment> attachments;
+		private final String text;
+		private final byte[] attachmentsJson;
+
+		Post(List<Attachment> attachments)
+		{
+			this.attachments = attachments;
+			// attachments with different texts each show theirs above them
+			String commonText = Attachment.commonText(attachments);
+			this.text = commonText != null ? commonText : "";
+			this.attachmentsJson = PayloadWriter.attachments(attachments, commonText == null);
+		}
+
+		String describe()
+		{
+			Attachment first = attachments.get(0);
+			return first.getMessage() + " (" + first.getColor() + ")"
+					+ (attachments.size() > 1 ? " and " + (attachments.size() - 1) + " more" : "");
 		}
 	}
 
-	private RequestConfig.Builder setupProxy(ProxyConfiguration proxy, HttpClientBuilder clientBuilder, RequestConfig.Builder reqconfigconbuilder) throws MalformedURLException
+	private static long elapsedMillis(long startNanos)
 	{
-		HttpHost proxyHost = new HttpHost(proxy.name, proxy.port);
-		DefaultProxyRoutePlanner routePlanner = new DefaultProxyRoutePlanner(proxyHost);
-		clientBuilder.setRoutePlanner(routePlanner);
-		reqconfigconbuilder.setProxy(proxyHost);
-
-		setupProxyAuth(proxy, clientBuilder, proxyHost);
-		return reqconfigconbuilder;
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 	}
 
-	private void setupProxyAuth(ProxyConfiguration proxy, HttpClientBuilder clientBuilder, HttpHost proxyHost)
+	private void logHttpErrorStatus(CloseableHttpResponse execute, int responseCode, String roomIdString, URL hosturl) throws IOException
 	{
-		String username = proxy.getUserName();
-		String password = proxy.getPassword();
-		// Consider it to be passed if username specified. Sufficient?
-		if (username != null && !username.isEmpty())
+		if (execute.getEntity() == null)
 		{
-			logger.info("Using proxy authentication (user=" + username + ")");
-			BasicCredentialsProvider basicCredentialsProvider = new BasicCredentialsProvider();
-			basicCredentialsProvider.setCredentials(
-					new org.apache.http.auth.AuthScope(proxyHost.getHostName(), proxy.port),
-					new org.apache.http.auth.UsernamePasswordCredentials(username, password));
-
-			clientBuilder.setDefaultCredentialsProvider(basicCredentialsProvider);
+			logger.log(Level.WARNING, "WARN Status " + responseCode + ": to " + roomIdString + "@" + hosturl.getHost());
+			return;
+		}
+		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(execute.getEntity().getContent(), Charset.defaultCharset()));
+		try {
+			String collect = bufferedReader.lines().collect(Collectors.joining(" "));
+			logger.log(Level.WARNING, "WARN Status " + responseCode + ": to " + roomIdString + "@" + hosturl.getHost() + ": " + collect);
+		} finally {
+			bufferedReader.close();
 		}
 	}
 
 	protected boolean isProxyRequired(List<Pattern> noProxyHosts)
 	{
-		try
-		{
-			URL url = new URL(endpoint);
-			for (Pattern p : noProxyHosts)
-			{
-				if (p.matcher(url.getHost()).matches()) return false;
-			}
-		} catch (MalformedURLException e)
+		if (endpointError != null)
 		{
 			logger.log(
 					Level.WARNING,
@@ -272,7 +379,7 @@ public class StandardMattermostService implements MattermostService
 			// default behavior : proxy still activated
 			return true;
 		}
-		return true;
+		return ProxyRoute.isProxyRequired(url.getHost(), noProxyHosts);
 	}
 
 	@Deprecated
@@ -289,8 +396,25 @@ public class StandardMattermostService implements MattermostService
 		return isProxyRequired(collect);
 	}
 
+	/** Overrides the globally configured retry policy; not for instances shared through {@link #get}. */
+	void setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		this.retryPolicy = retryPolicy;
+	}
+
 	void setEndpoint(String endpoint)
 	{
 		this.endpoint = endpoint;
+		try
+		{
+			this.url = new URL(endpoint);
+			this.httpHost = new HttpHost(url.getHost(), url.getPort(), url.getProtocol());
+			this.endpointError = null;
+		} catch (MalformedURLException e)
+		{
+			this.url = null;
+			this.httpHost = null;
+			this.endpointError = e;
+		}
 	}
 }
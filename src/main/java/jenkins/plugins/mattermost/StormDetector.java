@@ -0,0 +1,374 @@
+package jenkins.plugins.mattermost;
+
+import hudson.init.Terminator;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Watches how many failed or unstable builds each channel is notified of. When {@link #THRESHOLD}
+ * of them arrive within {@link #WINDOW_MILLIS}, as when broken shared infrastructure fails
+ * hundreds of jobs at once, the channel switches to digest mode: instead of one post per failure it
+ * gets one summary every {@link #DIGEST_INTERVAL_MILLIS}, with the builds counted by result and
+ * listed by job. It switches back once a summary finds the rate below the threshold again. Other
+ * results are always posted as usual.
+ */
+public final class StormDetector {
+
+  private static final Logger logger = Logger.getLogger(StormDetector.class.getName());
+
+  /** Failure notifications within the window that start digest mode; 0 disables it. */
+  static final int THRESHOLD =
+      SystemProperties.getInteger(StormDetector.class.getName() + ".threshold", 20);
+
+  static final long WINDOW_MILLIS =
+      TimeUnit.SECONDS.toMillis(
+          SystemProperties.getInteger(StormDetector.class.getName() + ".windowSeconds", 120));
+
+  static final long DIGEST_INTERVAL_MILLIS =
+      TimeUnit.SECONDS.toMillis(
+          SystemProperties.getInteger(
+              StormDetector.class.getName() + ".digestIntervalSeconds", 300));
+
+  /** How many builds a summary lists at most; the others are only counted. */
+  static final int MAX_DIGEST_BUILDS =
+      SystemProperties.getInteger(StormDetector.class.getName() + ".maxDigestBuilds", 50);
+
+  private static final StormDetector instance =
+      new StormDetector(THRESHOLD, WINDOW_MILLIS, MAX_DIGEST_BUILDS);
+
+  /** What happens to a notification to a channel. */
+  enum Verdict {
+    /** Posted as usual. */
+    POST,
+    /** Collected into the channel's digest. */
+    DIGEST,
+    /** Collected into the digest of a channel that just switched to digest mode. */
+    STORM_STARTED
+  }
+
+  private final int threshold;
+  private final long windowMillis;
+  private final int maxDigestBuilds;
+
+  /**
+   * The channels notified of failures recently, by a digest of the endpoint, which holds the
+   * webhook key, and the channel. Guarded by {@code this}.
+   */
+  private final Map<String, Channel> channels = new HashMap<>();
+
+  private long digested;
+  /** When channels without recent failures are next dropped. Guarded by {@code this}. */
+  private long nextPrune;
+
+  StormDetector(int threshold, long windowMillis, int maxDigestBuilds) {
+    this.threshold = threshold;
+    this.windowMillis = windowMillis;
+    this.maxDigestBuilds = Math.max(0, maxDigestBuilds);
+  }
+
+  public static StormDetector get() {
+    return instance;
+  }
+
+  /** Logs the notifications collected into digests that will not be sent anymore. */
+  @Terminator(requires = MattermostExecutors.NOTIFICATIONS_DRAINED)
+  public static void shutdown() {
+    int pending = instance.getPendingCount();
+    if (pending > 0) {
+      logger.warning(
+          "Dropping " + pending + " Mattermost notification(s) collected into pending digests");
+    }
+  }
+
+  /**
+   * Records the completion notification of a build for every channel of the given channel spec,
+   * and returns the spec of those it should still be posted to, or {@code null} if every channel
+   * collects it into its digest.
+   */
+  @CheckForNull
+  String admit(
+      String endpoint, String channelSpec, String icon, String build, String result, String url) {
+    if (threshold <= 0) {
+      return channelSpec;
+    }
+    long now = System.currentTimeMillis();
+    List<String> direct = new ArrayList<>();
+    String endpointDigest = digest(endpoint);
+    for (String channel : channelSpec.split("[,;]+")) {
+      String trimmed = channel.trim();
+      String key = endpointDigest + "\n" + trimmed;
+      Target target = new Target(endpoint, trimmed, icon);
+      switch (admit(key, target, build, result, url, now)) {
+        case POST:
+          direct.add(trimmed);
+          break;
+        case STORM_STARTED:
+          logger.warning(
+              threshold
+                  + " Mattermost notifications to "
+                  + trimmed
+                  + " within "
+                  + windowMillis
+                  + "ms, sending digests instead");
+          target.service().publishAsync(stormNotice(), "", "warning");
+          scheduleDigest(key);
+          break;
+        default:
+          break;
+      }
+    }
+    return direct.isEmpty() ? null : String.join(",", direct);
+  }
+
+  synchronized Verdict admit(String key, String build, String result, String url, long now) {
+    return admit(key, null, build, result, url, now);
+  }
+
+  private synchronized Verdict admit(
+      String key,
+      @CheckForNull Target target,
+      String build,
+      String result,
+      String url,
+      long now) {
+    if (now - nextPrune >= 0) {
+      prune(now);
+      nextPrune = now + windowMillis;
+    }
+    if (!isFailure(result)) {
+      return Verdict.POST;
+    }
+    Channel channel = channels.computeIfAbsent(key, k -> new Channel());
+    channel.record(now, threshold);
+    if (channel.digest == null && !channel.isStorming(now, threshold, windowMillis)) {
+      return Verdict.POST;
+    }
+    if (target != null) {
+      // digests go where the latest notification would have; only kept while digesting
+      channel.target = target;
+    }
+    if (channel.digest != null) {
+      channel.digest.add(build, result, url, maxDigestBuilds);
+      digested++;
+      return Verdict.DIGEST;
+    }
+    channel.digest = new Digest();
+    channel.digest.add(build, result, url, maxDigestBuilds);
+    digested++;
+    return Verdict.STORM_STARTED;
+  }
+
+  /**
+   * Takes the digest collected for the channel, leaving digest mode if its rate dropped below the
+   * threshold. Returns {@code null} if the channel is not in digest mode.
+   */
+  @CheckForNull
+  synchronized Digest takeDigest(String key, long now) {
+    Channel channel = channels.get(key);
+    if (channel == null || channel.digest == null) {
+      return null;
+    }
+    Digest digest = channel.digest;
+    digest.target = channel.target;
+    if (channel.isStorming(now, threshold, windowMillis)) {
+      channel.digest = new Digest();
+    } else {
+      digest.last = true;
+      channels.remove(key);
+    }
+    return digest;
+  }
+
+  /** Drops the channels not in digest mode that had no failure within the window. */
+  private void prune(long now) {
+    channels.values().removeIf(channel -> channel.digest == null && channel.isIdle(now, windowMillis));
+  }
+
+  private static boolean isFailure(String result) {
+    return "FAILURE".equals(result) || "UNSTABLE".equals(result);
+  }
+
+  /** SHA-256 of the endpoint, so the map does not hold webhook keys. */
+  private static String digest(String endpoint) {
+    try {
+      byte[] hash =
+          MessageDigest.getInstance("SHA-256").digest(endpoint.getBytes(StandardCharsets.UTF_8));
+      return Base64.getEncoder().encodeToString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform provides SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void scheduleDigest(String key) {
+    Timer.get()
+        .schedule(
+            () -> {
+              Digest digest = takeDigest(key, System.currentTimeMillis());
+              if (digest == null) {
+                return;
+              }
+              if ((!digest.isEmpty() || digest.isLast()) && digest.target != null) {
+                digest.target.service().publishAsync(digest.render(), "", digest.getColor());
+              }
+              if (!digest.isLast()) {
+                scheduleDigest(key);
+              }
+            },
+            DIGEST_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+  }
+
+  private static String stormNotice() {
+    return ":rotating_light: Many builds are completing at once. Until things calm down, their"
+        + " results are summarized here every "
+        + TimeUnit.MILLISECONDS.toMinutes(DIGEST_INTERVAL_MILLIS)
+        + " min instead of being posted one by one.";
+  }
+
+  /** Number of channels currently in digest mode. */
+  public synchronized int getDigestingChannels() {
+    int digesting = 0;
+    for (Channel channel : channels.values()) {
+      if (channel.digest != null) {
+        digesting++;
+      }
+    }
+    return digesting;
+  }
+
+  /** Number of notifications collected into digests instead of being posted. */
+  public synchronized long getDigestedCount() {
+    return digested;
+  }
+
+  /** Number of notifications collected into digests that have not been sent yet. */
+  synchronized int getPendingCount() {
+    int pending = 0;
+    for (Channel channel : channels.values()) {
+      if (channel.digest != null) {
+        pending += channel.digest.total;
+      }
+    }
+    return pending;
+  }
+
+  /** Number of channels currently watched. */
+  synchronized int getChannelCount() {
+    return channels.size();
+  }
+
+  /** Where the digests of a channel are posted. */
+  private static final class Target {
+    private final String endpoint;
+    private final String channel;
+    private final String icon;
+
+    Target(String endpoint, String channel, String icon) {
+      this.endpoint = endpoint;
+      this.channel = channel;
+      this.icon = icon;
+    }
+
+    MattermostService service() {
+      return MattermostNotifier.newMattermostService(endpoint, channel, icon);
+    }
+  }
+
+  /** The recent failure notifications to a channel. */
+  private static final class Channel {
+    /** The times of the last notifications, at most as many as the threshold. */
+    private final ArrayDeque<Long> times = new ArrayDeque<>();
+    private @CheckForNull Digest digest;
+    private @CheckForNull Target target;
+
+    void record(long now, int threshold) {
+      times.addLast(now);
+      while (times.size() > threshold) {
+        times.removeFirst();
+      }
+    }
+
+    /** Whether the last notifications came at a rate above the threshold. */
+    boolean isStorming(long now, int threshold, long windowMillis) {
+      return times.size() >= threshold && now - times.peekFirst() <= windowMillis;
+    }
+
+    /** Whether the window holds no notification anymore. */
+    boolean isIdle(long now, long windowMillis) {
+      return times.isEmpty() || now - times.peekLast() > windowMillis;
+    }
+  }
+
+  /** The builds collected for a channel in digest mode since its last summary. */
+  static final class Digest {
+    private final Map<String, Integer> counts = new LinkedHashMap<>();
+    private final List<String> builds = new ArrayList<>();
+    private int total;
+    private boolean last;
+    private @CheckForNull Target target;
+
+    void add(String build, String result, String url, int maxBuilds) {
+      total++;
+      counts.merge(result, 1, Integer::sum);
+      if (builds.size() < maxBuilds) {
+        StringBuilder line = new StringBuilder("- ");
+        ActiveNotifier.MessageBuilder.escapeTo(line, build, true);
+        line.append(": ").append(result).append(" [Open](").append(url).append(")");
+        builds.add(line.toString());
+      }
+    }
+
+    boolean isEmpty() {
+      return total == 0;
+    }
+
+    /** Whether this is the last summary, after which builds are posted one by one again. */
+    boolean isLast() {
+      return last;
+    }
+
+    String getColor() {
+      return counts.containsKey("FAILURE") ? "danger" : "warning";
+    }
+
+    String render() {
+      StringBuilder text = new StringBuilder(":rotating_light: ");
+      text.append(total).append(" build(s) completed");
+      if (total > 0) {
+        text.append(": ");
+        boolean first = true;
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+          if (!first) {
+            text.append(", ");
+          }
+          text.append(count.getValue()).append(" ").append(count.getKey());
+          first = false;
+        }
+      }
+      for (String build : builds) {
+        text.append('\n').append(build);
+      }
+      if (total > builds.size()) {
+        text.append("\n+").append(total - builds.size()).append(" more");
+      }
+      if (last) {
+        text.append("\nThings calmed down, builds are posted one by one again.");
+      }
+      return text.toString();
+    }
+  }
+}
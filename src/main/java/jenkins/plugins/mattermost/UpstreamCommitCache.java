@@ -0,0 +1,98 @@
+package jenkins.plugins.mattermost;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import jenkins.util.SystemProperties;
+
+/**
+ * Remembers the commit lists resolved from upstream builds for a short while, so the downstream
+ * builds triggered by one upstream build look its changes up once. Concurrent lookups of the same
+ * upstream build wait for the first one instead of loading the builds again.
+ */
+final class UpstreamCommitCache {
+
+  static final long TTL_MILLIS =
+      TimeUnit.SECONDS.toMillis(
+          SystemProperties.getInteger(UpstreamCommitCache.class.getName() + ".ttlSeconds", 60));
+
+  static final int CAPACITY =
+      SystemProperties.getInteger(UpstreamCommitCache.class.getName() + ".capacity", 100);
+
+  private static final UpstreamCommitCache instance =
+      new UpstreamCommitCache(TTL_MILLIS, CAPACITY);
+
+  private final long ttlMillis;
+  /** Commit lists by upstream build, least recently used first. Guarded by {@code this}. */
+  private final Map<String, Resolution> resolutions;
+
+  UpstreamCommitCache(long ttlMillis, int capacity) {
+    this.ttlMillis = ttlMillis;
+    int maxSize = Math.max(1, capacity);
+    resolutions =
+        new LinkedHashMap<String, Resolution>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Resolution> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  static UpstreamCommitCache get() {
+    return instance;
+  }
+
+  /** The commit list cached for the key, resolving it if there is none or it expired. */
+  String resolve(String key, Supplier<String> resolver) {
+    return resolve(key, resolver, System.currentTimeMillis());
+  }
+
+  String resolve(String key, Supplier<String> resolver, long now) {
+    Resolution resolution;
+    boolean owner = false;
+    synchronized (this) {
+      resolution = resolutions.get(key);
+      if (resolution == null || resolution.expiresAt <= now) {
+        resolution = new Resolution(now + ttlMillis);
+        resolutions.put(key, resolution);
+        owner = true;
+      }
+    }
+    if (owner) {
+      try {
+        resolution.commits.complete(resolver.get());
+      } catch (RuntimeException | Error e) {
+        synchronized (this) {
+          resolutions.remove(key, resolution);
+        }
+        // the lookups waiting for this one fail too, rather than waiting forever
+        resolution.commits.completeExceptionally(e);
+        throw e;
+      }
+    }
+    try {
+      return resolution.commits.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  private static final class Resolution {
+    private final long expiresAt;
+    private final CompletableFuture<String> commits = new CompletableFuture<>();
+
+    Resolution(long expiresAt) {
+      this.expiresAt = expiresAt;
+    }
+  }
+}
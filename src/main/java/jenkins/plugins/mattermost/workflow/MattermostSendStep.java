@@ -8,8 +8,11 @@ import hudson.Util;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
+import jenkins.plugins.mattermost.GlobalSettings;
 import jenkins.plugins.mattermost.MattermostNotifier;
 import jenkins.plugins.mattermost.MattermostService;
+import jenkins.plugins.mattermost.OutboundQueue;
+import jenkins.plugins.mattermost.QueuedMattermostService;
 import jenkins.plugins.mattermost.StandardMattermostService;
 import org.jenkinsci.plugins.workflow.steps.*;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -171,12 +174,13 @@ public class MattermostSendStep extends Step
 				  jenkins.getDescriptorByType(MattermostNotifier.DescriptorImpl.class);
 		  if (mattermostDesc == null)
 			  mattermostDesc = (MattermostNotifier.DescriptorImpl) jenkins.getDescriptor("mattermostNotifier");//junit test fallback
+		  GlobalSettings settings = mattermostDesc.getSettings();
 		  String team =
           step.getEndpoint() != null
 				  ? step.getEndpoint()
-				  : mattermostDesc.getEndpoint().getPlainText();
-		  String channel = step.channel != null ? step.channel : mattermostDesc.getRoom();
-		  String icon = step.icon != null ? step.icon : (mattermostDesc.getIcon() != null ? mattermostDesc.getIcon() : "");
+				  : settings.getEndpoint();
+		  String channel = step.channel != null ? step.channel : settings.getRoom();
+		  String icon = step.icon != null ? step.icon : (settings.getIcon() != null ? settings.getIcon() : "");
 		  String color = step.color != null ? step.color : "";
 		  String text = step.text != null ? step.text : "";
 
@@ -203,7 +207,12 @@ public class MattermostSendStep extends Step
 	  // streamline unit testing
 	  MattermostService getMattermostService(String team, String channel, String icon)
 	  {
-		  return new StandardMattermostService(team, channel, icon);
+		  // failOnError needs the outcome of the post, so it cannot be deferred to the queue
+		  if (!step.failOnError && OutboundQueue.isEnabled())
+		  {
+			  return new QueuedMattermostService(team, channel, icon);
+		  }
+		  return StandardMattermostService.get(team, channel, icon);
 	  }
   }
 }
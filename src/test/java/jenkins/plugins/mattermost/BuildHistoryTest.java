@@ -0,0 +1,85 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+public class BuildHistoryTest {
+
+  @Test
+  public void abortedBuildsDoNotAffectTransitions() {
+    BuildHistory history =
+        BuildHistory.EMPTY
+            .next(1, Result.FAILURE, 1000)
+            .next(2, Result.ABORTED, 2000)
+            .next(3, Result.ABORTED, 3000);
+    assertSame(Result.ABORTED, history.getLastResult());
+    assertSame(Result.FAILURE, history.getLastNonAbortedResult());
+    assertEquals(1, history.getConsecutiveFailures());
+    assertFalse(history.hasSucceeded());
+  }
+
+  @Test
+  public void failuresAreCountedUntilTheNextSuccess() {
+    BuildHistory history =
+        BuildHistory.EMPTY
+            .next(1, Result.SUCCESS, 1000)
+            .next(2, Result.FAILURE, 2000)
+            .next(3, Result.FAILURE, 3000);
+    assertEquals(2, history.getConsecutiveFailures());
+    assertEquals(1, history.getLastSuccessNumber());
+    assertEquals(1000, history.getLastSuccessTime());
+
+    history = history.next(4, Result.SUCCESS, 4000);
+    assertEquals(0, history.getConsecutiveFailures());
+    assertEquals(4, history.getLastSuccessNumber());
+    assertTrue(history.hasSucceeded());
+  }
+
+  @Test
+  public void historyBeforeTheLastBuildIsKept() {
+    BuildHistory first = BuildHistory.EMPTY.next(1, Result.FAILURE, 1000);
+    BuildHistory second = first.next(2, Result.SUCCESS, 2000);
+    assertSame(second, second.before(3, 2));
+    assertSame(Result.FAILURE, second.before(2, 1).getLastResult());
+    assertNull(second.before(1, 0));
+    // only one build back, so histories do not pile up
+    assertNull(second.next(3, Result.SUCCESS, 3000).before(3, 2).before(2, 1));
+  }
+
+  @Test
+  public void historyWithMissingBuildsIsNotTrusted() {
+    BuildHistory history = BuildHistory.EMPTY.next(1, Result.FAILURE, 1000);
+    assertSame(BuildHistory.EMPTY, history.before(1, 0));
+    // builds 2 to 4 completed without being recorded
+    assertNull(history.before(5, 4));
+    assertNull(history.next(5, Result.SUCCESS, 5000).before(5, 4));
+  }
+
+  @Test
+  public void successBeyondTheScannedBuildsIsUnknown() {
+    BuildHistory history =
+        new BuildHistory(150, Result.FAILURE, Result.FAILURE, BuildHistory.UNKNOWN_SUCCESS, 0, 100, null);
+    assertTrue(history.hasSucceeded());
+    assertFalse(history.isLastSuccessKnown());
+    BuildHistory read = BuildHistory.fromLine(history.toLine());
+    assertFalse(read.isLastSuccessKnown());
+    assertTrue(history.next(151, Result.SUCCESS, 5000).isLastSuccessKnown());
+  }
+
+  @Test
+  public void lineRoundTrip() {
+    BuildHistory history = new BuildHistory(12, null, null, 10, 123456789L, 2, null);
+    assertEquals("12 - - 10 123456789 2", history.toLine());
+    BuildHistory read = BuildHistory.fromLine(history.toLine());
+    assertEquals(12, read.getLastNumber());
+    assertEquals(10, read.getLastSuccessNumber());
+    assertEquals(123456789L, read.getLastSuccessTime());
+    assertEquals(2, read.getConsecutiveFailures());
+  }
+}
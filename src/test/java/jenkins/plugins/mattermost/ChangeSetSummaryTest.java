@@ -0,0 +1,63 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ChangeSetSummaryTest {
+
+  @Test
+  public void distinctFilesAreCountedExactlyUpToTheThreshold() {
+    ChangeSetSummary summary = new ChangeSetSummary(10, 100);
+    summary.addEntry("alice");
+    summary.addPath("a.txt");
+    summary.addPath("b.txt");
+    summary.addEntry("bob");
+    summary.addPath("a.txt");
+    assertFalse(summary.isEmpty());
+    assertFalse(summary.isFileCountApproximate());
+    assertEquals(2, summary.getFileCount());
+  }
+
+  @Test
+  public void manyFilesAreEstimated() {
+    ChangeSetSummary summary = new ChangeSetSummary(10, 1000);
+    summary.addEntry("alice");
+    for (int i = 0; i < 50000; i++) {
+      summary.addPath("vendor/lib/file" + i + ".go");
+      summary.addPath("vendor/lib/file" + (i / 2) + ".go");
+    }
+    assertTrue(summary.isFileCountApproximate());
+    assertEquals(50000, summary.getFileCount(), 2500);
+  }
+
+  @Test
+  public void estimateIsNotBelowTheThreshold() {
+    ChangeSetSummary summary = new ChangeSetSummary(10, 5);
+    for (int i = 0; i < 6; i++) {
+      summary.addPath("file" + i);
+    }
+    assertTrue(summary.isFileCountApproximate());
+    assertTrue(summary.getFileCount() >= 6);
+  }
+
+  @Test
+  public void authorsAreCappedInOrder() {
+    ChangeSetSummary summary = new ChangeSetSummary(2, 100);
+    summary.addEntry("carol");
+    summary.addEntry("alice");
+    summary.addEntry("carol");
+    assertFalse(summary.hasMoreAuthors());
+    summary.addEntry("bob");
+    assertEquals(Arrays.asList("carol", "alice"), Arrays.asList(summary.getAuthors().toArray()));
+    assertTrue(summary.hasMoreAuthors());
+  }
+
+  @Test
+  public void noEntriesIsEmpty() {
+    assertTrue(new ChangeSetSummary(2, 100).isEmpty());
+  }
+}
@@ -0,0 +1,42 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import org.junit.Test;
+
+public class ChannelTargetTest {
+
+  @Test
+  public void parsesEverySupportedFormat() {
+    List<ChannelTarget> targets =
+        ChannelTarget.parseAll("town-square, @alice;bot@builds,bot@@bob,");
+    assertEquals(4, targets.size());
+    assertTarget(targets.get(0), "jenkins", "town-square");
+    assertTarget(targets.get(1), "jenkins", "@alice");
+    assertTarget(targets.get(2), "bot", "builds");
+    assertTarget(targets.get(3), "bot", "@bob");
+  }
+
+  @Test
+  public void emptySpecPostsToTheDefaultChannel() {
+    ChannelTarget target = ChannelTarget.parse("");
+    assertTarget(target, "jenkins", "");
+    assertEquals("(default)", target.toString());
+  }
+
+  @Test
+  public void malformedSpecsAreReported() {
+    assertNotNull(ChannelTarget.parse("bot@").getError());
+    assertNotNull(ChannelTarget.parse("my channel").getError());
+    assertNotNull(ChannelTarget.parse("my bot@builds").getError());
+  }
+
+  private static void assertTarget(ChannelTarget target, String user, String room) {
+    assertNull(target.getError());
+    assertEquals(user, target.getUser());
+    assertEquals(room, target.getRoom());
+  }
+}
@@ -0,0 +1,104 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private static final PublishResult OK = PublishResult.of("#a", 200, 10);
+  private static final PublishResult UNAVAILABLE = PublishResult.of("#a", 503, 10);
+  private static final PublishResult NOT_FOUND = PublishResult.of("#a", 404, 10);
+  private static final PublishResult REFUSED =
+      PublishResult.failure("#a", PublishResult.NO_RESPONSE, 10, new ConnectException());
+
+  @Test
+  public void opensWhenFailureRateIsReached() {
+    CircuitBreaker breaker = new CircuitBreaker("http://mm", 10, 4, 50, 100, 5000, 60000);
+    call(breaker, OK, 10);
+    call(breaker, REFUSED, 10);
+    call(breaker, OK, 10);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    call(breaker, UNAVAILABLE, 10);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void clientErrorsDoNotOpen() {
+    CircuitBreaker breaker = new CircuitBreaker("http://mm", 10, 2, 50, 100, 5000, 60000);
+    for (int i = 0; i < 10; i++) {
+      call(breaker, NOT_FOUND, 10);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void opensWhenSlowCallRateIsReached() {
+    CircuitBreaker breaker = new CircuitBreaker("http://mm", 4, 4, 50, 75, 1000, 60000);
+    call(breaker, OK, 10);
+    call(breaker, OK, 2000);
+    call(breaker, OK, 2000);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    call(breaker, OK, 2000);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void oldOutcomesLeaveTheWindow() {
+    CircuitBreaker breaker = new CircuitBreaker("http://mm", 4, 4, 75, 100, 5000, 60000);
+    call(breaker, REFUSED, 10);
+    call(breaker, REFUSED, 10);
+    for (int i = 0; i < 4; i++) {
+      call(breaker, OK, 10);
+    }
+    assertEquals(0, breaker.getFailureRate());
+    call(breaker, REFUSED, 10);
+    call(breaker, REFUSED, 10);
+    assertEquals(50, breaker.getFailureRate());
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void singleProbeClosesAgain() {
+    CircuitBreaker breaker = new CircuitBreaker("http://mm", 2, 2, 50, 100, 5000, 0);
+    call(breaker, REFUSED, 10);
+    call(breaker, REFUSED, 10);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    assertTrue(breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertFalse("only one probe at a time", breaker.tryAcquire());
+    breaker.record(OK, 10);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+  }
+
+  @Test
+  public void failedProbeOpensAgain() {
+    CircuitBreaker breaker = new CircuitBreaker("http://mm", 2, 2, 50, 100, 5000, 0);
+    call(breaker, REFUSED, 10);
+    call(breaker, REFUSED, 10);
+    assertTrue(breaker.tryAcquire());
+    breaker.record(UNAVAILABLE, 10);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void shortCircuitedPostsAreNotRetriedImmediately() {
+    PublishResult result =
+        PublishResult.failure(
+            "#a", PublishResult.NO_RESPONSE, 0, new CircuitBreaker.OpenException("http://mm"), 30000);
+    assertTrue(CircuitBreaker.isShortCircuited(result));
+    assertFalse(RetryPolicy.isRetryable(result));
+  }
+
+  private static void call(CircuitBreaker breaker, PublishResult result, long durationMillis) {
+    assertTrue(breaker.tryAcquire());
+    breaker.record(result, durationMillis);
+  }
+}
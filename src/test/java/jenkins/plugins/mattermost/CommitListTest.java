@@ -0,0 +1,94 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class CommitListTest {
+
+  @Test
+  public void commitsKeepTheirOrderWithoutDuplicates() {
+    CommitList commits = new CommitList(10, 100);
+    commits.add("Second", "bob");
+    commits.add("First", "alice");
+    commits.add("Second", "bob");
+    assertEquals("- Second [bob]\n- First [alice]", commits.render());
+  }
+
+  @Test
+  public void titlesAreCutToTheirFirstLine() {
+    CommitList commits = new CommitList(10, 10);
+    commits.add("Short\n\nWith a body", null);
+    commits.add("A rather long title", null);
+    assertEquals("- Short\n- A rather \u2026", commits.render());
+  }
+
+  @Test
+  public void commitsBeyondTheCapAreCounted() {
+    CommitList commits = new CommitList(2, 100);
+    for (int i = 0; i < 5; i++) {
+      commits.add("Commit " + i, null);
+    }
+    assertEquals("- Commit 0\n- Commit 1\n+3 more", commits.render());
+  }
+
+  @Test
+  public void shortMessageIsOnePost() {
+    assertEquals(Collections.singletonList("a\nb"), CommitList.split("a\nb", 10));
+  }
+
+  @Test
+  public void longMessageIsSplitAtLineBreaks() {
+    assertEquals(
+        Arrays.asList(
+            "Changes:\n- one\n- two\n- three\n- four\n- five", "Changes: (continued)\n- six"),
+        CommitList.split("Changes:\n- one\n- two\n- three\n- four\n- five\n- six", 45));
+  }
+
+  @Test
+  public void postsStayWithinTheLimit() {
+    StringBuilder message = new StringBuilder("job - #1 Changes:");
+    for (int i = 0; i < 100; i++) {
+      message.append("\n- Commit number ").append(i);
+    }
+    message.append("\n- ").append(new String(new char[200]).replace('\0', 'x'));
+    List<String> posts = CommitList.split(message.toString(), 120);
+    assertTrue(posts.size() > 1);
+    for (String post : posts) {
+      assertTrue(post, post.length() <= 120);
+    }
+    assertTrue(posts.get(1).startsWith("job - #1 Changes: (continued)\n- Commit number"));
+    StringBuilder joined = new StringBuilder();
+    for (String post : posts) {
+      joined.append(post, post == posts.get(0) ? 0 : post.indexOf('\n') + 1, post.length());
+      joined.append('\n');
+    }
+    assertTrue(joined.toString().startsWith(message.substring(0, 500)));
+  }
+
+  @Test
+  public void lineLongerThanAPostIsMarkedAsCut() {
+    List<String> posts = CommitList.split("Changes:\n- " + new String(new char[50]).replace('\0', 'x'), 30);
+    assertEquals(2, posts.size());
+    assertEquals(30, posts.get(1).length());
+    assertTrue(posts.get(1), posts.get(1).endsWith("x\u2026"));
+  }
+
+  @Test
+  public void maxMessageLengthBesideLeavesRoomForTheFirstAttachment() {
+    String status = "job - #1 Success after 1 min";
+    assertTrue(CommitList.maxMessageLengthBeside(status, "") < CommitList.maxMessageLength(""));
+    assertTrue(CommitList.maxMessageLengthBeside(status, "") >= CommitList.MIN_COMBINED_LENGTH);
+    String huge = new String(new char[Attachment.MAX_POST_SIZE / 2]).replace('\0', 'x');
+    assertTrue(CommitList.maxMessageLengthBeside(huge, "") < CommitList.MIN_COMBINED_LENGTH);
+  }
+
+  @Test
+  public void maxMessageLengthLeavesRoomForTheText() {
+    assertTrue(CommitList.maxMessageLength("") > CommitList.maxMessageLength("@here deploy"));
+  }
+}
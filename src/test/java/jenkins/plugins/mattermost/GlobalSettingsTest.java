@@ -0,0 +1,57 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.ProxyConfiguration;
+import org.junit.Test;
+
+public class GlobalSettingsTest {
+
+  @Test
+  public void settingsArePublishedWhenApplied() {
+    MattermostNotifierStub.DescriptorStub descriptor = new MattermostNotifierStub.DescriptorStub();
+    descriptor.setRoom("room");
+    descriptor.applySettings();
+    GlobalSettings settings = descriptor.getSettings();
+    assertEquals("room", settings.getRoom());
+    assertSame(settings, descriptor.getSettings());
+    assertSame(settings, GlobalSettings.current());
+
+    descriptor.setIcon("icon");
+    // setters only change the descriptor, so a form is published as a whole
+    assertSame(settings, GlobalSettings.current());
+    descriptor.applySettings();
+    GlobalSettings changed = descriptor.getSettings();
+    assertNotSame(settings, changed);
+    assertNull(settings.getIcon());
+    assertEquals("icon", changed.getIcon());
+    assertSame(changed, GlobalSettings.current());
+  }
+
+  @Test
+  public void customProxyIsBuiltOnce() {
+    MattermostNotifierStub.DescriptorStub descriptor = new MattermostNotifierStub.DescriptorStub();
+    assertNull(descriptor.getSettings().getCustomProxy());
+    descriptor.setProxyServer("proxy.example.com");
+    descriptor.setProxyPort(3128);
+    descriptor.setUseCustomProxy(true);
+    descriptor.applySettings();
+    ProxyConfiguration proxy = descriptor.getSettings().getCustomProxy();
+    assertNotNull(proxy);
+    assertEquals("proxy.example.com", proxy.name);
+    assertEquals(3128, proxy.port);
+    assertSame(proxy, descriptor.getSettings().getCustomProxy());
+  }
+
+  @Test
+  public void retryPolicyFollowsSettings() {
+    MattermostNotifierStub.DescriptorStub descriptor = new MattermostNotifierStub.DescriptorStub();
+    descriptor.setRetryMaxAttempts(7);
+    descriptor.applySettings();
+    assertEquals(7, RetryPolicy.current().getMaxAttempts());
+  }
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class HostGlobMatcherTest {
+
+  @Test
+  public void matchesExactHosts() {
+    HostGlobMatcher matcher = HostGlobMatcher.compile("localhost, chat.example.com");
+    assertTrue(matcher.matches("localhost"));
+    assertTrue(matcher.matches("Chat.Example.com"));
+    assertFalse(matcher.matches("example.com"));
+  }
+
+  @Test
+  public void matchesSubdomains() {
+    HostGlobMatcher matcher = HostGlobMatcher.compile("*.corp.example|*.internal");
+    assertTrue(matcher.matches("chat.corp.example"));
+    assertTrue(matcher.matches("a.b.corp.example"));
+    assertTrue(matcher.matches("mm.internal"));
+    assertFalse(matcher.matches("corp.example"));
+    assertFalse(matcher.matches("chat.corp.example.com"));
+    assertFalse(matcher.matches("chatcorp.example"));
+  }
+
+  @Test
+  public void matchesOtherGlobs() {
+    HostGlobMatcher matcher = HostGlobMatcher.compile("10.0.*\nmm-??.example.com *example.org");
+    assertTrue(matcher.matches("10.0.3.4"));
+    assertTrue(matcher.matches("mm-01.example.com"));
+    assertTrue(matcher.matches("myexample.org"));
+    assertFalse(matcher.matches("10.1.0.1"));
+    assertFalse(matcher.matches("mm-1.example.com"));
+  }
+
+  @Test
+  public void emptyListMatchesNothing() {
+    assertFalse(HostGlobMatcher.compile((String) null).matches("localhost"));
+    assertFalse(HostGlobMatcher.compile(" ").matches("localhost"));
+  }
+
+  @Test
+  public void agreesWithRegularExpressions() {
+    String[] globs = {"*.corp.example", "exact.host", "10.*", "a?c.example", "*x*y*", "*"};
+    String[] hosts = {
+      "chat.corp.example", "corp.example", "exact.host", "10.2.3.4", "abc.example", "ac.example",
+      "xay", "yx", ""
+    };
+    for (String glob : globs) {
+      HostGlobMatcher matcher = HostGlobMatcher.compile(Arrays.asList(glob));
+      Pattern pattern = Pattern.compile(StandardMattermostService.createRegexFromGlob(glob));
+      for (String host : hosts) {
+        assertTrue(
+            glob + " vs " + host,
+            matcher.matches(host) == pattern.matcher(host).matches());
+      }
+    }
+  }
+}
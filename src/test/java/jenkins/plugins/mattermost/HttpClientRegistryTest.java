@@ -0,0 +1,71 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import hudson.ProxyConfiguration;
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Test;
+
+public class HttpClientRegistryTest {
+
+  @After
+  public void shutdown() {
+    HttpClientRegistry.shutdown();
+  }
+
+  @Test
+  public void sameHostAndProxyShareOneClient() {
+    HttpHost host = new HttpHost("mattermost.example.com", 443, "https");
+    CloseableHttpClient first = client(host, null);
+    CloseableHttpClient second = client(new HttpHost("mattermost.example.com", 443, "https"), null);
+    assertSame(first, second);
+    assertEquals(1, HttpClientRegistry.size());
+  }
+
+  @Test
+  public void differentHostsGetDifferentClients() {
+    CloseableHttpClient first = client(new HttpHost("one.example.com", 443, "https"), null);
+    CloseableHttpClient second = client(new HttpHost("two.example.com", 443, "https"), null);
+    assertNotSame(first, second);
+    assertEquals(2, HttpClientRegistry.size());
+  }
+
+  @Test
+  public void changedProxyReplacesClientOfHost() {
+    HttpHost host = new HttpHost("mattermost.example.com", 443, "https");
+    CloseableHttpClient direct = client(host, null);
+    ProxyConfiguration proxy = new ProxyConfiguration("proxy.example.com", 3128, null, null, null, null);
+    CloseableHttpClient proxied = client(host, proxy);
+    assertNotSame(direct, proxied);
+    assertEquals(1, HttpClientRegistry.size());
+  }
+
+  @Test
+  public void changedProxyPasswordReplacesClientOfHost() {
+    HttpHost host = new HttpHost("mattermost.example.com", 443, "https");
+    CloseableHttpClient first =
+        client(host, new ProxyConfiguration("proxy.example.com", 3128, "user", "old", null, null));
+    CloseableHttpClient second =
+        client(host, new ProxyConfiguration("proxy.example.com", 3128, "user", "new", null, null));
+    assertNotSame(first, second);
+    assertEquals(1, HttpClientRegistry.size());
+  }
+
+  @Test
+  public void shutdownReleasesAllClients() {
+    client(new HttpHost("mattermost.example.com", 443, "https"), null);
+    HttpClientRegistry.shutdown();
+    assertEquals(0, HttpClientRegistry.size());
+  }
+
+  private static CloseableHttpClient client(HttpHost host, ProxyConfiguration proxy) {
+    try (HttpClientRegistry.Lease lease =
+        HttpClientRegistry.acquire(host, proxy, HttpClientRegistry.proxyKey(proxy))) {
+      return lease.client();
+    }
+  }
+}
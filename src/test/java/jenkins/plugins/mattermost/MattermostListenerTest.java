@@ -0,0 +1,63 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.model.FreeStyleProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class MattermostListenerTest {
+
+  @Rule public JenkinsRule j = new JenkinsRule();
+
+  private final MattermostListener listener = new MattermostListener();
+
+  @Test
+  public void notifierIsLookedUpAgainAfterProjectChanges() throws Exception {
+    FreeStyleProject project = j.createFreeStyleProject("project");
+    assertNull(listener.getMattermostNotifier(project));
+
+    MattermostNotifier notifier = newNotifier();
+    project.getPublishersList().add(notifier);
+    assertSame(notifier, listener.getMattermostNotifier(project));
+    assertSame(notifier, listener.getMattermostNotifier(project));
+
+    project.getPublishersList().remove(notifier);
+    assertNull(listener.getMattermostNotifier(project));
+  }
+
+  @Test
+  public void renamedProjectIsLookedUpUnderItsNewName() throws Exception {
+    FreeStyleProject project = j.createFreeStyleProject("before");
+    assertNull(listener.getMattermostNotifier(project));
+    project.renameTo("after");
+    MattermostNotifier notifier = newNotifier();
+    project.getPublishersList().add(notifier);
+    assertSame(notifier, listener.getMattermostNotifier(project));
+  }
+
+  private static MattermostNotifier newNotifier() {
+    return new MattermostNotifier(
+        "http://mattermost.example.com/hooks/x",
+        "room",
+        "",
+        "",
+        "",
+        false,
+        false,
+        true,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        CommitInfoChoice.NONE,
+        false,
+        null,
+        false,
+        null);
+  }
+}
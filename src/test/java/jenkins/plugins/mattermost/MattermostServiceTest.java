@@ -0,0 +1,54 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class MattermostServiceTest {
+
+  /** A service without native support for several attachments, recording what it posts. */
+  private static class RecordingService implements MattermostService {
+    private final List<String> posted = new ArrayList<>();
+    private final String failing;
+
+    RecordingService(String failing) {
+      this.failing = failing;
+    }
+
+    public boolean publish(String message) {
+      return publish(message, "warning");
+    }
+
+    public boolean publish(String message, String color) {
+      return publish(message, "", color);
+    }
+
+    public boolean publish(String message, String text, String color) {
+      posted.add(message);
+      return !message.equals(failing);
+    }
+  }
+
+  @Test
+  public void messagesArePostedInTurnWithoutNativeSupport() {
+    RecordingService service = new RecordingService(null);
+    PublishResult result =
+        service.publishAsync(Arrays.asList("status", "changes"), "", "good").join();
+    assertTrue(result.isSuccess());
+    assertEquals(Arrays.asList("status", "changes"), service.posted);
+  }
+
+  @Test
+  public void firstFailureIsReported() {
+    RecordingService service = new RecordingService("status");
+    PublishResult result =
+        service.publishAsync(Arrays.asList("status", "changes"), "", "good").join();
+    assertFalse(result.isSuccess());
+    assertEquals(2, service.posted.size());
+  }
+}
@@ -0,0 +1,31 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MessageBuilderTest {
+
+  private static String escape(String string, boolean markdown) {
+    StringBuilder out = new StringBuilder("> ");
+    ActiveNotifier.MessageBuilder.escapeTo(out, string, markdown);
+    return out.toString();
+  }
+
+  @Test
+  public void htmlIsEscaped() {
+    assertEquals("> a &lt;b&gt; &amp;&amp; c_d", escape("a <b> && c_d", false));
+  }
+
+  @Test
+  public void displayNameMarkdownIsEscaped() {
+    assertEquals(
+        "> my\\_job \\*\\~x\\~\\* \\`&lt;y&gt;\\`", escape("my_job *~x~* `<y>`", true));
+  }
+
+  @Test
+  public void plainTextIsCopied() {
+    assertEquals("> plain text", escape("plain text", true));
+    assertEquals("> ", escape("", true));
+  }
+}
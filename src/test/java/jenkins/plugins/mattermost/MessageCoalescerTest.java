@@ -0,0 +1,74 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class MessageCoalescerTest {
+
+  private final List<List<Attachment>> posts = new CopyOnWriteArrayList<>();
+
+  private MessageCoalescer coalescer(int maxAttachments, int maxPostSize) {
+    return new MessageCoalescer(maxAttachments, maxPostSize) {
+      @Override
+      void post(Batch batch) {
+        posts.add(batch.attachments);
+        batch.posted.complete(PublishResult.of("#builds", 200, 0));
+      }
+    };
+  }
+
+  @Test
+  public void messagesWithinTheWindowArePostedTogether() throws Exception {
+    MessageCoalescer coalescer = coalescer(20, 16000);
+    CompletableFuture<PublishResult> first =
+        coalescer.submit("http://mm", "#builds", "", new Attachment("one", "", "good"), 200);
+    CompletableFuture<PublishResult> second =
+        coalescer.submit("http://mm", "#builds", "", new Attachment("two", "", "danger"), 200);
+    assertTrue(first.get(10, TimeUnit.SECONDS).isSuccess());
+    assertTrue(second.get(10, TimeUnit.SECONDS).isSuccess());
+    assertEquals(1, posts.size());
+    assertEquals(2, posts.get(0).size());
+    assertEquals("two", posts.get(0).get(1).getMessage());
+  }
+
+  @Test
+  public void channelsAreBatchedSeparately() throws Exception {
+    MessageCoalescer coalescer = coalescer(20, 16000);
+    coalescer.submit("http://mm", "#a,#b", "", new Attachment("one", "", "good"), 50).get(10, TimeUnit.SECONDS);
+    assertEquals(2, posts.size());
+    assertEquals(0, coalescer.getOpenBatches());
+  }
+
+  @Test
+  public void fullBatchIsPostedEarly() throws Exception {
+    MessageCoalescer coalescer = coalescer(2, 16000);
+    CompletableFuture<PublishResult> first =
+        coalescer.submit("http://mm", "#builds", "", new Attachment("one", "", "good"), 60000);
+    coalescer.submit("http://mm", "#builds", "", new Attachment("two", "", "good"), 60000);
+    coalescer.submit("http://mm", "#builds", "", new Attachment("three", "", "good"), 60000);
+    assertTrue(first.get(10, TimeUnit.SECONDS).isSuccess());
+    assertEquals(1, posts.size());
+    assertEquals(2, posts.get(0).size());
+    assertEquals(1, coalescer.getOpenBatches());
+  }
+
+  @Test
+  public void largeMessagesAreNotCombined() throws Exception {
+    MessageCoalescer coalescer = coalescer(20, 500);
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 150; i++) {
+      large.append('x');
+    }
+    CompletableFuture<PublishResult> first =
+        coalescer.submit("http://mm", "#builds", "", new Attachment(large.toString(), "", "good"), 60000);
+    coalescer.submit("http://mm", "#builds", "", new Attachment(large.toString(), "", "good"), 60000);
+    first.get(10, TimeUnit.SECONDS);
+    assertEquals(1, posts.get(0).size());
+  }
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class MessageTemplateTest {
+
+  private final List<String> expanded = new ArrayList<>();
+  private final TokenExpander macros =
+      (template, build) -> {
+        expanded.add(template);
+        return template.replace("${BUILD_STATUS}", "Success");
+      };
+
+  @Test
+  public void literalMessageIsNotExpanded() {
+    MessageTemplate template = MessageTemplate.compile("Deployed to staging");
+    assertTrue(template.isLiteral());
+    assertEquals("Deployed to staging", template.expand(new EnvVars(), macros, null));
+    assertTrue(expanded.isEmpty());
+  }
+
+  @Test
+  public void environmentVariablesAreFilledInWithoutMacros() {
+    EnvVars environment = new EnvVars();
+    environment.put("JOB_NAME", "app");
+    environment.put("BUILD_NUMBER", "7");
+    MessageTemplate template = MessageTemplate.compile("$JOB_NAME #${BUILD_NUMBER} done");
+    assertFalse(template.isLiteral());
+    assertEquals("app #7 done", template.expand(environment, macros, null));
+    assertTrue(expanded.isEmpty());
+  }
+
+  @Test
+  public void unknownVariablesAreLeftToTheMacros() {
+    EnvVars environment = new EnvVars();
+    environment.put("JOB_NAME", "app");
+    MessageTemplate template = MessageTemplate.compile("${JOB_NAME}: ${BUILD_STATUS}");
+    assertEquals("app: Success", template.expand(environment, macros, null));
+    assertEquals("app: ${BUILD_STATUS}", expanded.get(0));
+    assertEquals("$UNKNOWN", MessageTemplate.compile("$UNKNOWN").expand(environment, null, null));
+  }
+
+  @Test
+  public void otherSyntaxIsExpandedAsAWhole() {
+    MessageTemplate template = MessageTemplate.compile("${BUILD_LOG, maxLines=5} costs $$");
+    assertFalse(template.isLiteral());
+    template.expand(new EnvVars(), macros, null);
+    assertEquals(1, expanded.size());
+  }
+
+  @Test
+  public void nullIsAnEmptyLiteral() {
+    MessageTemplate template = MessageTemplate.compile(null);
+    assertTrue(template.isLiteral());
+    assertEquals("", template.getSource());
+  }
+}
@@ -0,0 +1,52 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class NotificationDeduplicatorTest {
+
+  @Test
+  public void eventIsClaimedOncePerChannel() {
+    NotificationDeduplicator deduplicator = new NotificationDeduplicator(10);
+    assertEquals("a,b", deduplicator.claim("job", 1, "completed", "a, b"));
+    assertNull(deduplicator.claim("job", 1, "completed", "a;b"));
+    assertEquals("c", deduplicator.claim("job", 1, "completed", "a,c"));
+    assertEquals(3, deduplicator.getDuplicateCount());
+  }
+
+  @Test
+  public void otherBuildsAndEventsAreNotDuplicates() {
+    NotificationDeduplicator deduplicator = new NotificationDeduplicator(10);
+    assertEquals("a", deduplicator.claim("job", 1, "completed", "a"));
+    assertEquals("a", deduplicator.claim("job", 2, "completed", "a"));
+    assertEquals("a", deduplicator.claim("job", 1, "started", "a"));
+    assertEquals("a", deduplicator.claim("other", 1, "completed", "a"));
+  }
+
+  @Test
+  public void defaultChannelIsClaimedToo() {
+    NotificationDeduplicator deduplicator = new NotificationDeduplicator(10);
+    assertEquals("", deduplicator.claim("job", 1, "completed", ""));
+    assertNull(deduplicator.claim("job", 1, "completed", ""));
+  }
+
+  @Test
+  public void releasedEventCanBeClaimedAgain() {
+    NotificationDeduplicator deduplicator = new NotificationDeduplicator(10);
+    assertEquals("a,b", deduplicator.claim("job", 1, "completed", "a,b"));
+    deduplicator.release("job", 1, "completed", "a,b");
+    assertEquals("a,b", deduplicator.claim("job", 1, "completed", "a,b"));
+  }
+
+  @Test
+  public void leastRecentlyClaimedEventsAreForgotten() {
+    NotificationDeduplicator deduplicator = new NotificationDeduplicator(2);
+    deduplicator.claim("job", 1, "completed", "a");
+    deduplicator.claim("job", 2, "completed", "a");
+    deduplicator.claim("job", 3, "completed", "a");
+    assertEquals("a", deduplicator.claim("job", 1, "completed", "a"));
+    assertNull(deduplicator.claim("job", 3, "completed", "a"));
+  }
+}
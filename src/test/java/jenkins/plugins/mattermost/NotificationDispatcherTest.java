@@ -0,0 +1,84 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class NotificationDispatcherTest {
+
+  @Test
+  public void notificationsOfAJobAreSentInOrder() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher();
+    List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(1);
+    for (int i = 0; i < 100; i++) {
+      int n = i;
+      dispatcher.dispatch("job", () -> sent.add(n));
+    }
+    dispatcher.dispatch("job", done::countDown);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expected.add(i);
+    }
+    assertEquals(expected, sent);
+    assertEquals(0, dispatcher.getPendingCount());
+  }
+
+  @Test
+  public void slowJobDoesNotHoldBackOthers() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher();
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch other = new CountDownLatch(1);
+    dispatcher.dispatch(
+        "slow",
+        () -> {
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    dispatcher.dispatch("slow", () -> {});
+    dispatcher.dispatch("fast", other::countDown);
+    assertTrue(other.await(10, TimeUnit.SECONDS));
+    assertEquals(1, dispatcher.getPendingCount());
+    release.countDown();
+  }
+
+  @Test
+  public void failingNotificationDoesNotStopTheJobsLane() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher();
+    CountDownLatch done = new CountDownLatch(1);
+    dispatcher.dispatch(
+        "job",
+        () -> {
+          throw new IllegalStateException("expected");
+        });
+    dispatcher.dispatch("job", done::countDown);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void onlyChannelsThatFailedAreReleased() {
+    PublishResult result =
+        PublishResult.of(
+            Arrays.asList(
+                PublishResult.of("a", 200, 0),
+                PublishResult.of("b", 503, 0),
+                PublishResult.of("c", 200, 0),
+                PublishResult.failure("d", PublishResult.NO_RESPONSE, 0, null)));
+    assertEquals("b,d", NotificationDispatcher.failedChannels("a,b,c,d", result, new EnvVars()));
+    assertNull(
+        NotificationDispatcher.failedChannels("a", PublishResult.of("a", 200, 0), new EnvVars()));
+  }
+}
@@ -0,0 +1,142 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jenkins.plugins.mattermost.workflow.TestListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class OutboundQueueTest {
+
+  @Rule public JenkinsRule j = new JenkinsRule();
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void journalReplaysOnlyPendingMessages() throws Exception {
+    File file = new File(tmp.getRoot(), "queue.journal");
+    NotificationJournal journal = new NotificationJournal(file);
+    journal.append(message(1, "#one"));
+    journal.append(message(2, "#two"));
+    journal.append(message(3, "#three"));
+    journal.acknowledge(2);
+    journal.close();
+
+    List<OutboundMessage> pending = new NotificationJournal(file).replay();
+    assertEquals(2, pending.size());
+    assertEquals("#one", pending.get(0).getChannel());
+    assertEquals("#three", pending.get(1).getChannel());
+    assertEquals("http://localhost/hooks/secret", pending.get(0).getEndpoint());
+  }
+
+  @Test
+  public void journalDoesNotStoreEndpointInPlainText() throws Exception {
+    File file = new File(tmp.getRoot(), "queue.journal");
+    NotificationJournal journal = new NotificationJournal(file);
+    journal.append(message(1, "#one"));
+    journal.close();
+    String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertFalse(content.contains("hooks/secret"));
+  }
+
+  @Test
+  public void compactionKeepsPendingMessages() throws Exception {
+    File file = new File(tmp.getRoot(), "queue.journal");
+    NotificationJournal journal = new NotificationJournal(file);
+    journal.append(message(1, "#one"));
+    journal.append(message(2, "#two"));
+    journal.acknowledge(1);
+    journal.compact(Collections.singletonList(message(2, "#two")));
+    journal.close();
+
+    List<OutboundMessage> pending = new NotificationJournal(file).replay();
+    assertEquals(1, pending.size());
+    assertEquals(2, pending.get(0).getId());
+  }
+
+  @Test
+  public void journalAppendsBatchesInOrder() throws Exception {
+    File file = new File(tmp.getRoot(), "queue.journal");
+    NotificationJournal journal = new NotificationJournal(file);
+    journal.append(message(1, "#one"));
+    journal.append(Arrays.asList(message(2, "#two"), message(3, "#three")));
+    journal.close();
+
+    List<OutboundMessage> pending = new NotificationJournal(file).replay();
+    assertEquals(3, pending.size());
+    assertEquals("#three", pending.get(2).getChannel());
+  }
+
+  @Test
+  public void journalKeepsAttachmentsPostedTogether() throws Exception {
+    File file = new File(tmp.getRoot(), "queue.journal");
+    NotificationJournal journal = new NotificationJournal(file);
+    journal.append(
+        new OutboundMessage(
+            1,
+            System.currentTimeMillis(),
+            "http://localhost/hooks/secret",
+            "#one",
+            "",
+            Arrays.asList("status", "commits"),
+            "",
+            "good"));
+    journal.close();
+
+    List<OutboundMessage> pending = new NotificationJournal(file).replay();
+    assertEquals(Arrays.asList("status", "commits"), pending.get(0).getMessages());
+  }
+
+  @Test
+  public void queuedMessagesAreDeliveredToEveryChannel() throws Exception {
+    TestListener target = TestListener.create("/hooks/queue");
+    new Thread(target).start();
+    OutboundQueue queue = OutboundQueue.get();
+    assertTrue(
+        queue.enqueue(
+            "http://localhost:" + target.port + "/hooks/queue", "#one,#two", "", "queued message", "", "good"));
+
+    String first = target.messages.poll(10, TimeUnit.SECONDS);
+    String second = target.messages.poll(10, TimeUnit.SECONDS);
+    assertNotNull(first);
+    assertNotNull(second);
+    assertTrue(first.contains("queued message"));
+    for (int i = 0; i < 50 && queue.getDepth() > 0; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(0, queue.getDepth());
+  }
+
+  @Test
+  public void messagesToAnEndpointAreDeliveredInOrder() throws Exception {
+    TestListener target = TestListener.create("/hooks/order");
+    new Thread(target).start();
+    OutboundQueue queue = OutboundQueue.get();
+    String endpoint = "http://localhost:" + target.port + "/hooks/order";
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.enqueue(endpoint, "#one", "", "message " + i, "", "good"));
+    }
+    for (int i = 0; i < 10; i++) {
+      String received = target.messages.poll(10, TimeUnit.SECONDS);
+      assertNotNull(received);
+      assertTrue(received, received.contains("message " + i));
+    }
+  }
+
+  private static OutboundMessage message(long id, String channel) {
+    return new OutboundMessage(
+        id, System.currentTimeMillis(), "http://localhost/hooks/secret", channel, "", "message", "", "good");
+  }
+}
@@ -0,0 +1,68 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PayloadWriterTest {
+
+  @Test
+  public void escapesQuotesBackslashesAndControlCharacters() {
+    assertEquals(
+        "\"a\\\"b\\\\c\\nd\\te\\u0001\"",
+        new PayloadWriter(4).string("a\"b\\c\nd\te\u0001").toString());
+  }
+
+  @Test
+  public void encodesNonAsciiAsUtf8() {
+    String text = "caf\u00e9 \u20ac \ud83d\ude00";
+    assertArrayEquals(
+        ("\"" + text + "\"").getBytes(StandardCharsets.UTF_8),
+        new PayloadWriter(4).string(text).toByteArray());
+  }
+
+  @Test
+  public void replacesUnpairedSurrogates() {
+    assertEquals("\"a?b\"", new PayloadWriter(4).string("a\ud83db").toString());
+  }
+
+  @Test
+  public void writesTheWebhookPayload() {
+    byte[] attachments =
+        PayloadWriter.attachments(
+            Collections.singletonList(new Attachment("Build *#1* \"ok\"", "custom", "good")), false);
+    String payload =
+        new PayloadWriter(16).writePost("custom", attachments, "#builds", "jenkins", "").toString();
+
+    JSONObject json = new JSONObject(payload);
+    assertEquals("custom", json.getString("text"));
+    assertEquals("#builds", json.getString("channel"));
+    assertEquals("jenkins", json.getString("username"));
+    JSONObject attachment = json.getJSONArray("attachments").getJSONObject(0);
+    assertEquals("good", attachment.getString("color"));
+    assertEquals("Build *#1* \"ok\"", attachment.getString("fallback"));
+    assertEquals(
+        "Build *#1* \"ok\"", attachment.getJSONArray("fields").getJSONObject(0).getString("value"));
+    assertTrue(attachment.getJSONArray("mrkdwn_in").similar(new JSONArray("[pretext,text,fields]")));
+  }
+
+  @Test
+  public void defaultChannelIsOmittedAndPretextWrittenWhenTextsDiffer() {
+    byte[] attachments =
+        PayloadWriter.attachments(
+            Arrays.asList(new Attachment("one", "first", "good"), new Attachment("two", "", "danger")),
+            true);
+    JSONObject json =
+        new JSONObject(new PayloadWriter(16).writePost("", attachments, "", "jenkins", "").toString());
+    assertTrue(!json.has("channel"));
+    assertEquals("first", json.getJSONArray("attachments").getJSONObject(0).getString("pretext"));
+    assertTrue(!json.getJSONArray("attachments").getJSONObject(1).has("pretext"));
+  }
+}
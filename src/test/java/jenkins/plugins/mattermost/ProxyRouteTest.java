@@ -0,0 +1,59 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.ProxyConfiguration;
+import hudson.util.Secret;
+import org.apache.http.HttpHost;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class ProxyRouteTest {
+
+  @Rule public JenkinsRule j = new JenkinsRule();
+
+  private final HttpHost target = new HttpHost("mattermost.example.com", 443, "https");
+
+  @After
+  public void invalidate() {
+    ProxyRoute.invalidate();
+  }
+
+  @Test
+  public void routeIsResolvedOnce() {
+    ProxyRoute route = ProxyRoute.of(target);
+    assertNull(route.getProxy());
+    assertSame(route, ProxyRoute.of(target));
+  }
+
+  @Test
+  public void globalProxyChangeIsPickedUp() {
+    assertNull(ProxyRoute.of(target).getProxy());
+    j.jenkins.proxy = new ProxyConfiguration("proxy.example.com", 3128, null, null, "*.internal.com");
+    ProxyConfiguration proxy = ProxyRoute.of(target).getProxy();
+    assertNotNull(proxy);
+    assertEquals("proxy.example.com", proxy.name);
+    assertNull(ProxyRoute.of(new HttpHost("chat.internal.com", 443, "https")).getProxy());
+  }
+
+  @Test
+  public void customProxyIsUsedOnceApplied() {
+    assertNull(ProxyRoute.of(target).getProxy());
+    MattermostNotifier.DescriptorImpl descriptor =
+        j.jenkins.getDescriptorByType(MattermostNotifier.DescriptorImpl.class);
+    descriptor.setUseCustomProxy(true);
+    descriptor.setProxyServer("custom.example.com");
+    descriptor.setProxyPort(8080);
+    descriptor.setProxyPassword(Secret.fromString("secret"));
+    descriptor.applySettings();
+    ProxyConfiguration proxy = ProxyRoute.of(target).getProxy();
+    assertNotNull(proxy);
+    assertEquals("custom.example.com", proxy.name);
+    assertEquals(8080, proxy.port);
+  }
+}
@@ -0,0 +1,65 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void burstIsSentWithoutWaiting() {
+    RateLimiter limiter = new RateLimiter();
+    limiter.configure(10, 5, 0);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, limiter.reserve("http://mm", "#a", 0));
+    }
+    assertEquals(SECOND / 10, limiter.reserve("http://mm", "#a", 0));
+    assertEquals(2 * SECOND / 10, limiter.reserve("http://mm", "#b", 0));
+  }
+
+  @Test
+  public void tokensRefillOverTime() {
+    RateLimiter limiter = new RateLimiter();
+    limiter.configure(10, 1, 0);
+    assertEquals(0, limiter.reserve("http://mm", "#a", 0));
+    assertTrue(limiter.reserve("http://mm", "#a", 0) > 0);
+    assertEquals(0, limiter.reserve("http://mm", "#a", 10 * SECOND));
+  }
+
+  @Test
+  public void channelsAreLimitedSeparately() {
+    RateLimiter limiter = new RateLimiter();
+    limiter.configure(0, 1, 60);
+    assertEquals(0, limiter.reserve("http://mm", "#a", 0));
+    assertEquals(SECOND, limiter.reserve("http://mm", "#a", 0));
+    assertEquals(0, limiter.reserve("http://mm", "#b", 0));
+    assertEquals(0, limiter.reserve("http://other", "#a", 0));
+  }
+
+  @Test
+  public void refilledBucketsAreDropped() {
+    RateLimiter limiter = new RateLimiter();
+    limiter.configure(10, 1, 60);
+    for (int i = 0; i < 100; i++) {
+      limiter.reserve("http://mm", "#channel-" + i, 0);
+    }
+    assertEquals(101, limiter.getBucketCount());
+    limiter.reserve("http://mm", "#a", 0);
+    // minutes later every bucket has refilled; only those of the new post are left
+    limiter.reserve("http://mm", "#b", TimeUnit.MINUTES.toNanos(5));
+    assertEquals(2, limiter.getBucketCount());
+  }
+
+  @Test
+  public void zeroRateDisablesLimiting() {
+    RateLimiter limiter = new RateLimiter();
+    limiter.configure(0, 1, 0);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(0, limiter.reserve("http://mm", "#a", 0));
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.http.client.utils.DateUtils;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+  @Test
+  public void parsesRetryAfterSeconds() {
+    assertEquals(120000, RetryPolicy.parseRetryAfter(" 120 ", 0));
+  }
+
+  @Test
+  public void parsesRetryAfterDate() {
+    long now = System.currentTimeMillis();
+    String date = DateUtils.formatDate(new Date(now + 60000));
+    long delay = RetryPolicy.parseRetryAfter(date, now);
+    assertTrue("delay was " + delay, delay > 58000 && delay <= 60000);
+  }
+
+  @Test
+  public void ignoresMalformedRetryAfter() {
+    assertEquals(-1, RetryPolicy.parseRetryAfter("soon", 0));
+    assertEquals(-1, RetryPolicy.parseRetryAfter(null, 0));
+  }
+
+  @Test
+  public void onlyTransientFailuresAreRetried() {
+    assertTrue(RetryPolicy.isRetryable(PublishResult.of("#a", 429, 0)));
+    assertTrue(RetryPolicy.isRetryable(PublishResult.of("#a", 503, 0)));
+    assertTrue(
+        RetryPolicy.isRetryable(
+            PublishResult.failure("#a", PublishResult.NO_RESPONSE, 0, new SocketTimeoutException())));
+    assertTrue(
+        RetryPolicy.isRetryable(
+            PublishResult.failure(
+                "#a", PublishResult.NO_RESPONSE, 0, new RejectedExecutionException())));
+    assertFalse(RetryPolicy.isRetryable(PublishResult.of("#a", 200, 0)));
+    assertFalse(RetryPolicy.isRetryable(PublishResult.of("#a", 400, 0)));
+    assertFalse(RetryPolicy.isRetryable(PublishResult.of("#a", 404, 0)));
+    assertFalse(
+        RetryPolicy.isRetryable(
+            PublishResult.failure(
+                "#a", PublishResult.NO_RESPONSE, 0, new MalformedURLException("no protocol"))));
+  }
+
+  @Test
+  public void stopsAfterMaxAttempts() {
+    RetryPolicy policy = new RetryPolicy(3, 10, 100);
+    PublishResult unavailable = PublishResult.of("#a", 503, 0);
+    assertTrue(policy.shouldRetry(unavailable, 1));
+    assertTrue(policy.shouldRetry(unavailable, 2));
+    assertFalse(policy.shouldRetry(unavailable, 3));
+    assertFalse(RetryPolicy.NONE.shouldRetry(unavailable, 1));
+  }
+
+  @Test
+  public void delayIsBoundedAndHonoursRetryAfter() {
+    RetryPolicy policy = new RetryPolicy(100, 1000, 8000);
+    PublishResult unavailable = PublishResult.of("#a", 503, 0);
+    for (int attempt = 1; attempt < 100; attempt++) {
+      long delay = policy.delayMillis(attempt, unavailable);
+      assertTrue("delay was " + delay, delay >= 0 && delay <= Math.min(8000, 1000L << Math.min(attempt - 1, 20)));
+    }
+    assertTrue(policy.delayMillis(1, PublishResult.of("#a", 429, 0, 5000)) >= 5000);
+  }
+
+  @Test
+  public void retryAfterIsCappedToTheMaximumDelay() {
+    RetryPolicy policy = new RetryPolicy(3, 1000, 8000);
+    long hours = 3 * 60 * 60 * 1000L;
+    assertEquals(8000, policy.delayMillis(1, PublishResult.of("#a", 503, 0, hours)));
+  }
+}
@@ -7,7 +7,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -89,6 +91,52 @@ public class StandardMattermostServiceTest {
     assertTrue(service.publish("message"));
   }
 
+  @Test
+  public void publishAllReportsEveryRoom() {
+    StandardMattermostService service =
+			new StandardMattermostService("http://localhost:" + port, "#room1,#room2,#room3", "");
+    PublishResult result = service.publishAll("message", "", "good");
+    assertTrue(result.isSuccess());
+    assertEquals(3, result.getChannelResults().size());
+    assertEquals("#room1", result.getChannelResults().get(0).getChannel());
+    assertEquals("#room3", result.getChannelResults().get(2).getChannel());
+  }
+
+  @Test
+  public void combinedPublishPostsOncePerRoom() {
+    StandardMattermostService service =
+			new StandardMattermostService("http://localhost:" + port, "#room1,#room2", "");
+    PublishResult result =
+        service.publishAsync(Arrays.asList("status", "changes"), "", "good").join();
+    assertTrue(result.isSuccess());
+    assertEquals(2, result.getChannelResults().size());
+  }
+
+  @Test
+  public void publishAsyncReportsFailureWithoutThrowing() throws Exception {
+    StandardMattermostService service = new StandardMattermostService("http://foo", "#general", "");
+    service.setEndpoint("hostvaluethatwillcausepublishtofail");
+    PublishResult result = service.publishAsync("message", "", "good").get(30, TimeUnit.SECONDS);
+    assertFalse(result.isSuccess());
+    assertEquals(PublishResult.NO_RESPONSE, result.getStatusCode());
+    assertNotNull(result.getError());
+  }
+
+  @Test
+  public void servicesAreSharedPerConfiguration() {
+    StandardMattermostService service = StandardMattermostService.get("http://endpoint", "#room1", "");
+    assertSame(service, StandardMattermostService.get("http://endpoint", "#room1", ""));
+    assertNotSame(service, StandardMattermostService.get("http://endpoint", "#room2", ""));
+  }
+
+  @Test
+  public void malformedChannelIsReportedWithoutPosting() {
+    StandardMattermostService service = new StandardMattermostService("http://localhost:" + port, "bot@", "");
+    PublishResult result = service.publishAll("message", "", "good");
+    assertFalse(result.isSuccess());
+    assertTrue(result.getError().getMessage().contains("bot@"));
+  }
+
   @Test
   public void failedPublishToASingleRoomReturnsFalse() {
     StandardMattermostServiceStub service =
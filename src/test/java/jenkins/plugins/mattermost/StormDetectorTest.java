@@ -0,0 +1,99 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StormDetectorTest {
+
+  private static final String KEY = "http://mattermost\n#builds";
+
+  @Test
+  public void notificationsBelowTheThresholdArePosted() {
+    StormDetector detector = new StormDetector(3, 1000, 10);
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "a #1", "FAILURE", "u", 0));
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "b #1", "FAILURE", "u", 10));
+    // the first one left the window
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "c #1", "FAILURE", "u", 1001));
+    assertEquals(0, detector.getDigestingChannels());
+  }
+
+  @Test
+  public void stormSwitchesTheChannelToDigests() {
+    StormDetector detector = new StormDetector(3, 1000, 10);
+    detector.admit(KEY, "a #1", "FAILURE", "u", 0);
+    detector.admit(KEY, "b #1", "FAILURE", "u", 10);
+    assertEquals(
+        StormDetector.Verdict.STORM_STARTED, detector.admit(KEY, "c #1", "FAILURE", "u", 20));
+    assertEquals(StormDetector.Verdict.DIGEST, detector.admit(KEY, "d #1", "UNSTABLE", "u", 30));
+    assertEquals(
+        StormDetector.Verdict.POST, detector.admit("http://mattermost\n#other", "e", "X", "u", 30));
+    assertEquals(1, detector.getDigestingChannels());
+    assertEquals(2, detector.getDigestedCount());
+
+    StormDetector.Digest digest = detector.takeDigest(KEY, 40);
+    assertFalse(digest.isLast());
+    assertEquals("danger", digest.getColor());
+    assertTrue(
+        digest.render(),
+        digest
+            .render()
+            .startsWith(
+                ":rotating_light: 2 build(s) completed: 1 FAILURE, 1 UNSTABLE\n- c #1: FAILURE"));
+  }
+
+  @Test
+  public void channelSwitchesBackWhenTheRateDrops() {
+    StormDetector detector = new StormDetector(2, 1000, 10);
+    detector.admit(KEY, "a #1", "FAILURE", "u", 0);
+    detector.admit(KEY, "b #1", "FAILURE", "u", 10);
+    StormDetector.Digest digest = detector.takeDigest(KEY, 5000);
+    assertTrue(digest.isLast());
+    assertNull(detector.takeDigest(KEY, 5000));
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "c #1", "SUCCESS", "u", 6000));
+  }
+
+  @Test
+  public void digestListsAtMostTheConfiguredBuilds() {
+    StormDetector detector = new StormDetector(1, 1000, 1);
+    detector.admit(KEY, "a_job #1", "FAILURE", "http://jenkins/job/a_job/1/", 0);
+    detector.admit(KEY, "b #1", "FAILURE", "u", 0);
+    String digest = detector.takeDigest(KEY, 0).render();
+    assertEquals(
+        ":rotating_light: 2 build(s) completed: 2 FAILURE\n"
+            + "- a\\_job #1: FAILURE [Open](http://jenkins/job/a_job/1/)\n"
+            + "+1 more",
+        digest);
+  }
+
+  @Test
+  public void onlyFailuresCountTowardsTheThreshold() {
+    StormDetector detector = new StormDetector(2, 1000, 10);
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "a #1", "SUCCESS", "u", 0));
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "b #1", "SUCCESS", "u", 10));
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "c #1", "FAILURE", "u", 20));
+    assertEquals(
+        StormDetector.Verdict.STORM_STARTED, detector.admit(KEY, "d #1", "UNSTABLE", "u", 30));
+    // successes are still posted during a storm
+    assertEquals(StormDetector.Verdict.POST, detector.admit(KEY, "e #1", "SUCCESS", "u", 40));
+  }
+
+  @Test
+  public void channelsWithoutRecentFailuresAreDropped() {
+    StormDetector detector = new StormDetector(3, 1000, 10);
+    detector.admit(KEY, "a #1", "FAILURE", "u", 0);
+    detector.admit("http://mattermost\n#other", "b #1", "FAILURE", "u", 10);
+    assertEquals(2, detector.getChannelCount());
+    detector.admit(KEY, "c #1", "FAILURE", "u", 5000);
+    assertEquals(1, detector.getChannelCount());
+  }
+
+  @Test
+  public void zeroThresholdDisablesDigests() {
+    StormDetector detector = new StormDetector(0, 1000, 10);
+    assertEquals("a, b", detector.admit("http://mattermost", "a, b", "", "job #1", "FAILURE", "u"));
+  }
+}
@@ -0,0 +1,138 @@
+package jenkins.plugins.mattermost;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class UpstreamCommitCacheTest {
+
+  private final AtomicInteger resolved = new AtomicInteger();
+
+  private String resolve() {
+    return "Changes " + resolved.incrementAndGet();
+  }
+
+  @Test
+  public void commitListIsResolvedOnceUntilItExpires() {
+    UpstreamCommitCache cache = new UpstreamCommitCache(1000, 10);
+    assertEquals("Changes 1", cache.resolve("up#1", this::resolve, 0));
+    assertEquals("Changes 1", cache.resolve("up#1", this::resolve, 999));
+    assertEquals("Changes 2", cache.resolve("up#2", this::resolve, 999));
+    assertEquals("Changes 3", cache.resolve("up#1", this::resolve, 1000));
+  }
+
+  @Test
+  public void leastRecentlyUsedListsAreEvicted() {
+    UpstreamCommitCache cache = new UpstreamCommitCache(1000, 1);
+    cache.resolve("up#1", this::resolve, 0);
+    cache.resolve("up#2", this::resolve, 0);
+    assertEquals("Changes 3", cache.resolve("up#1", this::resolve, 0));
+  }
+
+  @Test
+  public void failuresAreNotCached() {
+    UpstreamCommitCache cache = new UpstreamCommitCache(1000, 10);
+    try {
+      cache.resolve(
+          "up#1",
+          () -> {
+            throw new IllegalStateException("deleted");
+          },
+          0);
+      fail();
+    } catch (IllegalStateException expected) {
+      // rethrown to the caller
+    }
+    assertEquals("Changes 1", cache.resolve("up#1", this::resolve, 0));
+  }
+
+  @Test
+  public void errorsReachTheWaitingLookups() throws Exception {
+    UpstreamCommitCache cache = new UpstreamCommitCache(60000, 10);
+    CountDownLatch resolving = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> first =
+          executor.submit(
+              () ->
+                  cache.resolve(
+                      "up#1",
+                      () -> {
+                        resolving.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          Thread.currentThread().interrupt();
+                        }
+                        throw new AssertionError("out of memory");
+                      },
+                      0));
+      resolving.await(10, TimeUnit.SECONDS);
+      Thread waiter =
+          new Thread(
+              () -> {
+                try {
+                  cache.resolve("up#1", this::resolve, 0);
+                } catch (AssertionError expected) {
+                  resolved.addAndGet(100);
+                }
+              });
+      waiter.start();
+      // give the second lookup time to find the pending resolution
+      Thread.sleep(100);
+      release.countDown();
+      waiter.join(10000);
+      try {
+        first.get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException expected) {
+        assertEquals(AssertionError.class, expected.getCause().getClass());
+      }
+      assertEquals(100, resolved.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void concurrentLookupsWaitForTheFirst() throws Exception {
+    UpstreamCommitCache cache = new UpstreamCommitCache(60000, 10);
+    CountDownLatch resolving = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> first =
+          executor.submit(
+              () ->
+                  cache.resolve(
+                      "up#1",
+                      () -> {
+                        resolving.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          Thread.currentThread().interrupt();
+                        }
+                        return resolve();
+                      },
+                      0));
+      resolving.await();
+      Future<String> second = executor.submit(() -> cache.resolve("up#1", this::resolve, 1));
+      release.countDown();
+      assertEquals("Changes 1", first.get(10, TimeUnit.SECONDS));
+      assertEquals("Changes 1", second.get(10, TimeUnit.SECONDS));
+      assertEquals(1, resolved.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}